@@ -0,0 +1,85 @@
+package io.rsocket.ipc.capture;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import io.netty.buffer.ByteBufUtil;
+
+public class CapturedMetadata {
+
+	public static enum Direction {
+		ENCODE, DECODE;
+	}
+
+	private final long sequence;
+	private final Instant timestamp;
+	private final Direction direction;
+	private final String route;
+	private final int size;
+	private final List<String> mimeTypes;
+	private final byte[] bytes;
+	private final String error;
+
+	public CapturedMetadata(long sequence, Instant timestamp, Direction direction, String route, int size,
+			List<String> mimeTypes, byte[] bytes, String error) {
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.direction = direction;
+		this.route = route;
+		this.size = size;
+		this.mimeTypes = mimeTypes == null ? Collections.emptyList() : Collections.unmodifiableList(mimeTypes);
+		this.bytes = bytes;
+		this.error = error;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Instant getTimestamp() {
+		return timestamp;
+	}
+
+	public Direction getDirection() {
+		return direction;
+	}
+
+	public String getRoute() {
+		return route;
+	}
+
+	/**
+	 * the size of the metadata before truncation
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public List<String> getMimeTypes() {
+		return mimeTypes;
+	}
+
+	/**
+	 * the captured bytes, truncated to the capture limit
+	 */
+	public byte[] getBytes() {
+		return bytes.clone();
+	}
+
+	public boolean isTruncated() {
+		return bytes.length < size;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return "CapturedMetadata [sequence=" + sequence + ", timestamp=" + timestamp + ", direction=" + direction
+				+ ", route=" + route + ", size=" + size + ", mimeTypes=" + mimeTypes + ", error=" + error
+				+ ", truncated=" + isTruncated() + ", bytes=" + ByteBufUtil.hexDump(bytes) + "]";
+	}
+
+}
@@ -0,0 +1,216 @@
+package io.rsocket.ipc.capture;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.rsocket.ipc.capture.CapturedMetadata.Direction;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.util.MetadataUtils;
+import io.rsocket.ipc.util.MetadataUtils.DisposableAddList;
+import reactor.core.Disposable;
+
+/**
+ * Records sampled or rule triggered metadata frames into a fixed size ring
+ * buffer, overwriting the oldest entries. Add it to an encoder or decoder and
+ * dump it on demand, either directly or over JMX. EX:
+ *
+ * <pre>
+ * MetadataCapture capture = new MetadataCapture(256, 512, 0.001);
+ * capture.addRule(metadata -> metadata.readableBytes() > 4096);
+ * decoder.addCapture(capture);
+ * capture.registerMBean("io.rsocket.ipc:type=MetadataCapture,name=server");
+ * </pre>
+ *
+ * Failures are sampled like any other frame, so load shedding errors stay
+ * cheap during overload. Add an error rule to record specific failures every
+ * time:
+ *
+ * <pre>
+ * capture.addErrorRule(error -> !(error instanceof RateLimitExceededException));
+ * </pre>
+ *
+ * Nothing is parsed or copied unless a frame is recorded.
+ */
+public class MetadataCapture implements MetadataCaptureMXBean {
+
+	private final AtomicReferenceArray<CapturedMetadata> slots;
+	private final int mask;
+	private final int maxBytes;
+	private final double sampleRate;
+	private final AtomicLong sequence = new AtomicLong();
+	private final DisposableAddList<Predicate<ByteBuf>> rules = DisposableAddList.create();
+	private final DisposableAddList<Predicate<Throwable>> errorRules = DisposableAddList.create();
+	private volatile boolean enabled = true;
+
+	/**
+	 * @param capacity   the number of frames kept, rounded up to a power of two
+	 * @param maxBytes   raw bytes kept per frame
+	 * @param sampleRate the fraction of frames recorded without a rule match,
+	 *                   between 0 and 1
+	 */
+	public MetadataCapture(int capacity, int maxBytes, double sampleRate) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be greater than 0");
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("maxBytes must not be negative");
+		if (sampleRate < 0 || sampleRate > 1)
+			throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+		int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+		this.maxBytes = maxBytes;
+		this.sampleRate = sampleRate;
+	}
+
+	public Disposable addRule(Predicate<ByteBuf> rule) {
+		Objects.requireNonNull(rule);
+		return rules.disposableAdd(rule);
+	}
+
+	/**
+	 * records failures matching the rule whatever the sample rate. Keep rules
+	 * narrow, every match parses and copies the metadata.
+	 */
+	public Disposable addErrorRule(Predicate<Throwable> errorRule) {
+		Objects.requireNonNull(errorRule);
+		return errorRules.disposableAdd(errorRule);
+	}
+
+	public void capture(Direction direction, ByteBuf metadata) {
+		capture(direction, metadata, null);
+	}
+
+	public void capture(Direction direction, ByteBuf metadata, Throwable error) {
+		if (!enabled || metadata == null)
+			return;
+		if (!isSampled() && !matchesErrorRule(error) && !matchesRule(metadata))
+			return;
+		long seq = sequence.getAndIncrement();
+		CapturedMetadata capturedMetadata = createCapturedMetadata(seq, direction, metadata, error);
+		int index = (int) (seq & mask);
+		// a slow writer with an older sequence must not overwrite a newer frame
+		while (true) {
+			CapturedMetadata current = slots.get(index);
+			if (current != null && current.getSequence() > seq)
+				return;
+			if (slots.compareAndSet(index, current, capturedMetadata))
+				return;
+		}
+	}
+
+	public List<CapturedMetadata> getCaptured() {
+		List<CapturedMetadata> captured = new ArrayList<>(slots.length());
+		for (int i = 0; i < slots.length(); i++) {
+			CapturedMetadata capturedMetadata = slots.get(i);
+			if (capturedMetadata != null)
+				captured.add(capturedMetadata);
+		}
+		captured.sort(Comparator.comparingLong(CapturedMetadata::getSequence));
+		return captured;
+	}
+
+	@Override
+	public String[] dump() {
+		return getCaptured().stream().map(CapturedMetadata::toString).toArray(String[]::new);
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < slots.length(); i++)
+			slots.set(i, null);
+	}
+
+	@Override
+	public long getCapturedCount() {
+		return sequence.get();
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public Disposable registerMBean(String objectName) throws JMException {
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(MetadataUtils.requireNonEmpty(objectName));
+		mBeanServer.registerMBean(this, name);
+		return () -> {
+			try {
+				if (mBeanServer.isRegistered(name))
+					mBeanServer.unregisterMBean(name);
+			} catch (JMException e) {
+				throw java.lang.RuntimeException.class.isAssignableFrom(e.getClass())
+						? java.lang.RuntimeException.class.cast(e)
+						: new java.lang.RuntimeException(e);
+			}
+		};
+	}
+
+	private boolean isSampled() {
+		return sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+	}
+
+	private boolean matchesRule(ByteBuf metadata) {
+		if (rules.isEmpty())
+			return false;
+		for (Predicate<ByteBuf> rule : rules)
+			if (rule.test(metadata.slice()))
+				return true;
+		return false;
+	}
+
+	private boolean matchesErrorRule(Throwable error) {
+		if (error == null || errorRules.isEmpty())
+			return false;
+		for (Predicate<Throwable> errorRule : errorRules)
+			if (errorRule.test(error))
+				return true;
+		return false;
+	}
+
+	private CapturedMetadata createCapturedMetadata(long seq, Direction direction, ByteBuf metadata,
+			Throwable error) {
+		int size = metadata.readableBytes();
+		byte[] bytes = ByteBufUtil.getBytes(metadata, metadata.readerIndex(), Math.min(size, maxBytes));
+		String route = null;
+		List<String> mimeTypes = null;
+		String errorMessage = error == null ? null : error.toString();
+		try {
+			MetadataReader metadataReader = new MetadataReader(metadata.slice());
+			mimeTypes = metadataReader.getCompositeMetadata().stream().map(e -> e.getMimeType())
+					.collect(Collectors.toList());
+			route = Stream
+					.concat(metadataReader.streamStrings(MimeTypes.MIME_TYPE_SERVICE),
+							metadataReader.streamStrings(MimeTypes.MIME_TYPE_METHOD))
+					.collect(Collectors.joining("."));
+		} catch (RuntimeException e) {
+			// malformed metadata is what we're here to capture, keep the raw bytes
+			if (errorMessage == null)
+				errorMessage = "unparseable metadata:" + e;
+		}
+		return new CapturedMetadata(seq, Instant.now(), direction, route, size, mimeTypes, bytes, errorMessage);
+	}
+
+}
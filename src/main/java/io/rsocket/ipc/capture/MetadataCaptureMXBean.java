@@ -0,0 +1,14 @@
+package io.rsocket.ipc.capture;
+
+public interface MetadataCaptureMXBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	long getCapturedCount();
+
+	String[] dump();
+
+	void clear();
+}
@@ -0,0 +1,180 @@
+package io.rsocket.ipc.deadline;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.ipc.decoders.MetadataWriter;
+import io.rsocket.ipc.encoders.MetadataEncoderLFP;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import reactor.util.context.Context;
+
+/**
+ * A point in time after which the caller no longer wants the response. It is
+ * written to metadata as the remaining budget in milliseconds (a 4 byte int) so
+ * that client and server clocks don't need to agree.
+ */
+public final class Deadline implements Comparable<Deadline> {
+
+	/**
+	 * key used to expose the deadline in the subscriber context of the handler
+	 * result
+	 */
+	public static final Class<Deadline> CONTEXT_KEY = Deadline.class;
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+	private final long deadlineNanos;
+
+	private Deadline(long deadlineNanos) {
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	public static Deadline after(Duration duration) {
+		Objects.requireNonNull(duration);
+		return afterNanos(duration.toNanos());
+	}
+
+	public static Deadline afterMillis(long millis) {
+		return afterNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	private static Deadline afterNanos(long nanos) {
+		return new Deadline(System.nanoTime() + nanos);
+	}
+
+	public Duration remaining() {
+		return Duration.ofNanos(Math.max(0, remainingNanos()));
+	}
+
+	public long remainingMillis() {
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(remainingNanos()));
+	}
+
+	public boolean isExpired() {
+		return remainingNanos() <= 0;
+	}
+
+	private long remainingNanos() {
+		return deadlineNanos - System.nanoTime();
+	}
+
+	public void write(MetadataWriter metadataWriter) {
+		Objects.requireNonNull(metadataWriter);
+		int budget = (int) Math.min(Integer.MAX_VALUE, remainingMillis());
+		metadataWriter.write(MimeTypes.MIME_TYPE_DEADLINE, Stream.of(budget), s -> s.map(Unpooled::copyInt));
+	}
+
+	/**
+	 * reads the budget relative to now, handlers should prefer {@link #current()}
+	 * or the subscriber context over re-reading the metadata
+	 */
+	public static Optional<Deadline> read(MetadataReader metadataReader) {
+		Objects.requireNonNull(metadataReader);
+		return metadataReader.stream(mimeType -> Objects.equals(mimeType, MimeTypes.MIME_TYPE_DEADLINE), bb -> {
+			if (bb.readableBytes() < Integer.BYTES)
+				return Stream.<Deadline>empty();
+			return Stream.of(Deadline.afterMillis(bb.getUnsignedInt(bb.readerIndex())));
+		}).findFirst();
+	}
+
+	public static Optional<Deadline> read(ByteBuf metadata) {
+		Objects.requireNonNull(metadata);
+		return read(new MetadataReader(metadata));
+	}
+
+	public static Optional<Deadline> fromContext(Context context) {
+		Objects.requireNonNull(context);
+		return context.getOrEmpty(CONTEXT_KEY);
+	}
+
+	/**
+	 * the deadline bound to the current thread, set while a handler is invoked by
+	 * {@link DeadlineDispatcher} or by {@link #callWith(Deadline, Callable)}
+	 */
+	public static Optional<Deadline> current() {
+		return Optional.ofNullable(CURRENT.get());
+	}
+
+	/**
+	 * binds the deadline to the current thread while the callable runs. The
+	 * binding is not visible to work resubscribed on other threads, a retry after
+	 * {@code timeout(..).retry(n)} is encoded on the timer thread and goes out
+	 * without the deadline or with a fresh budget. Prefer
+	 * {@link #encoderInterceptor(Supplier)} with a supplier tied to the logical
+	 * call when requests can be retried.
+	 */
+	public static <X> X callWith(Deadline deadline, Callable<X> callable) throws Exception {
+		Objects.requireNonNull(callable);
+		Deadline previous = CURRENT.get();
+		CURRENT.set(deadline);
+		try {
+			return callable.call();
+		} finally {
+			if (previous == null)
+				CURRENT.remove();
+			else
+				CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * writes the deadline bound to the current thread, if any. Subject to the
+	 * thread limits described in {@link #callWith(Deadline, Callable)}.
+	 */
+	public static MetadataEncoderLFP.Interceptor encoderInterceptor() {
+		return encoderInterceptor(() -> CURRENT.get());
+	}
+
+	/**
+	 * writes a fixed budget on every request, unless a shorter deadline is bound
+	 * to the current thread. The budget restarts on every encode, so a retry gets
+	 * the full timeout again.
+	 */
+	public static MetadataEncoderLFP.Interceptor encoderInterceptor(Duration timeout) {
+		Objects.requireNonNull(timeout);
+		return encoderInterceptor(() -> {
+			Deadline deadline = Deadline.after(timeout);
+			Deadline current = CURRENT.get();
+			return current != null && current.compareTo(deadline) < 0 ? current : deadline;
+		});
+	}
+
+	/**
+	 * writes the deadline of the logical call the request belongs to. EX:
+	 *
+	 * <pre>
+	 * AtomicReference&lt;Deadline&gt; deadline = new AtomicReference&lt;&gt;();
+	 * encoder.addInterceptor(Deadline.encoderInterceptor(deadline::get));
+	 * deadline.set(Deadline.after(Duration.ofSeconds(2)));
+	 * client.requestResponse("method").apply(request).timeout(Duration.ofMillis(500)).retry(3);
+	 * </pre>
+	 *
+	 * Every retry carries the same deadline, whichever thread it is encoded on.
+	 */
+	public static MetadataEncoderLFP.Interceptor encoderInterceptor(Supplier<Deadline> deadlineSupplier) {
+		Objects.requireNonNull(deadlineSupplier);
+		return writer -> {
+			Deadline deadline = deadlineSupplier.get();
+			if (deadline != null)
+				deadline.write(writer);
+		};
+	}
+
+	@Override
+	public int compareTo(Deadline other) {
+		return Long.compare(this.deadlineNanos - other.deadlineNanos, 0);
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline [remainingMillis=" + remainingMillis() + "]";
+	}
+
+}
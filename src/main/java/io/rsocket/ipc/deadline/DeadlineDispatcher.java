@@ -0,0 +1,107 @@
+package io.rsocket.ipc.deadline;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.util.MetadataUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sheds requests whose {@link Deadline} already passed, before the handler is
+ * invoked and again when the result is subscribed (ex: after waiting in a
+ * PriorityDispatcher queue added before this one). The deadline is bound to the
+ * thread while the handler is invoked and put in the subscriber context of the
+ * result under {@link Deadline#CONTEXT_KEY}. Requests without a deadline pass
+ * through untouched.
+ */
+public class DeadlineDispatcher implements MetadataDecoderLFP.Dispatcher {
+
+	private final boolean cancelOnExpiry;
+	private final LongAdder shedOnDecode = new LongAdder();
+	private final LongAdder shedOnSubscribe = new LongAdder();
+	private final LongAdder cancelled = new LongAdder();
+
+	public DeadlineDispatcher() {
+		this(true);
+	}
+
+	/**
+	 * @param cancelOnExpiry if true, results that are still running when the
+	 *                       deadline passes are cancelled with a
+	 *                       {@link DeadlineExceededException}
+	 */
+	public DeadlineDispatcher(boolean cancelOnExpiry) {
+		this.cancelOnExpiry = cancelOnExpiry;
+	}
+
+	@Override
+	public <RESULT> RESULT dispatch(ByteBuf data, MetadataReader metadataReader, String route,
+			Callable<RESULT> handler) throws Exception {
+		Deadline deadline = Deadline.read(metadataReader).orElse(null);
+		if (deadline == null)
+			return handler.call();
+		if (deadline.isExpired()) {
+			shedOnDecode.increment();
+			throw new DeadlineExceededException("deadline exceeded before handling:" + route);
+		}
+		RESULT result = Deadline.callWith(deadline, handler);
+		return MetadataUtils.transformPublisher(result, mono -> decorate(mono, route, deadline),
+				flux -> decorate(flux, route, deadline));
+	}
+
+	private <T> Mono<T> decorate(Mono<T> mono, String route, Deadline deadline) {
+		return Mono.defer(() -> {
+			if (deadline.isExpired()) {
+				shedOnSubscribe.increment();
+				return Mono.<T>error(new DeadlineExceededException("deadline exceeded before subscribe:" + route));
+			}
+			if (!cancelOnExpiry)
+				return mono;
+			return mono.timeout(deadline.remaining(), Mono.defer(() -> {
+				cancelled.increment();
+				return Mono.<T>error(new DeadlineExceededException("deadline exceeded:" + route));
+			}));
+		}).subscriberContext(ctx -> ctx.put(Deadline.CONTEXT_KEY, deadline));
+	}
+
+	private <T> Flux<T> decorate(Flux<T> flux, String route, Deadline deadline) {
+		return Flux.defer(() -> {
+			if (deadline.isExpired()) {
+				shedOnSubscribe.increment();
+				return Flux.<T>error(new DeadlineExceededException("deadline exceeded before subscribe:" + route));
+			}
+			if (!cancelOnExpiry)
+				return flux;
+			return flux.takeUntilOther(Mono.delay(deadline.remaining()).flatMap(nil -> {
+				cancelled.increment();
+				return Mono.error(new DeadlineExceededException("deadline exceeded:" + route));
+			}));
+		}).subscriberContext(ctx -> ctx.put(Deadline.CONTEXT_KEY, deadline));
+	}
+
+	/**
+	 * requests rejected during decode, the handler was never invoked
+	 */
+	public long getShedOnDecode() {
+		return shedOnDecode.sum();
+	}
+
+	/**
+	 * requests that expired between decode and subscription of the result
+	 */
+	public long getShedOnSubscribe() {
+		return shedOnSubscribe.sum();
+	}
+
+	/**
+	 * results cancelled because the deadline passed while they were running
+	 */
+	public long getCancelled() {
+		return cancelled.sum();
+	}
+
+}
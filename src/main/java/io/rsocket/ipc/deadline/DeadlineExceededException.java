@@ -0,0 +1,11 @@
+package io.rsocket.ipc.deadline;
+
+public class DeadlineExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public DeadlineExceededException(String message) {
+		super(message);
+	}
+
+}
@@ -1,9 +1,11 @@
 package io.rsocket.ipc.decoders;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -13,8 +15,11 @@ import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 import io.rsocket.Payload;
 import io.rsocket.ipc.MetadataDecoder;
+import io.rsocket.ipc.capture.CapturedMetadata;
+import io.rsocket.ipc.capture.MetadataCapture;
 import io.rsocket.ipc.encoders.MetadataReader;
 import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.tracer.BinaryTraceContext;
 import io.rsocket.ipc.tracing.Tracing;
 import io.rsocket.ipc.util.MetadataUtils.DisposableAddList;
 import reactor.core.Disposable;
@@ -24,8 +29,22 @@ public class MetadataDecoderLFP implements MetadataDecoder {
 	public static interface Interceptor extends Consumer<MetadataReader> {
 	};
 
+	/**
+	 * Wraps the invocation of the handler. If the handler is called it must be
+	 * called before returning, the payload (including data) is released once
+	 * decode completes. Implementations can also skip the handler to reject the
+	 * request or answer it themselves, and can decorate the returned publisher.
+	 */
+	public static interface Dispatcher {
+
+		<RESULT> RESULT dispatch(ByteBuf data, MetadataReader metadataReader, String route,
+				Callable<RESULT> handler) throws Exception;
+	};
+
 	private final Tracer tracer;
 	private final DisposableAddList<MetadataDecoderLFP.Interceptor> interceptors = DisposableAddList.create();
+	private final DisposableAddList<MetadataDecoderLFP.Dispatcher> dispatchers = DisposableAddList.create();
+	private final DisposableAddList<MetadataCapture> captures = DisposableAddList.create();
 
 	public MetadataDecoderLFP(MetadataDecoderLFP.Interceptor... interceptors) {
 		this((Tracer) null, interceptors);
@@ -42,24 +61,57 @@ public class MetadataDecoderLFP implements MetadataDecoder {
 		return interceptors.disposableAdd(interceptor);
 	}
 
+	public Disposable addDispatcher(MetadataDecoderLFP.Dispatcher dispatcher) {
+		Objects.requireNonNull(dispatcher);
+		return dispatchers.disposableAdd(dispatcher);
+	}
+
+	public Disposable addCapture(MetadataCapture capture) {
+		Objects.requireNonNull(capture);
+		return captures.disposableAdd(capture);
+	}
+
 	@Override
 	public final <RESULT> RESULT decode(Payload payload, Handler<RESULT> transformer) throws Exception {
 		ByteBuf metadata = payload.sliceMetadata();
 		// i think that we can retain reader slices bc we slice the data from the
 		// payload
 		MetadataReader metadataReader = new MetadataReader(metadata, true);
-		interceptors.forEach(v -> v.accept(metadataReader));
-		return decode(payload.sliceData(), metadataReader, metadata, transformer);
+		if (captures.isEmpty()) {
+			interceptors.forEach(v -> v.accept(metadataReader));
+			return decode(payload.sliceData(), metadataReader, metadata, transformer);
+		}
+		try {
+			interceptors.forEach(v -> v.accept(metadataReader));
+			RESULT result = decode(payload.sliceData(), metadataReader, metadata, transformer);
+			captures.forEach(v -> v.capture(CapturedMetadata.Direction.DECODE, metadata));
+			return result;
+		} catch (Throwable t) {
+			captures.forEach(v -> v.capture(CapturedMetadata.Direction.DECODE, metadata, t));
+			throw t;
+		}
 	}
 
 	protected <RESULT> RESULT decode(ByteBuf data, MetadataReader metadataReader, ByteBuf metadata,
 			Handler<RESULT> transformer) throws Exception {
 		String route = getRoute(metadataReader);
 		SpanContext context = readTracingSpanContext(metadataReader);
-		RESULT result = transformer.handleAndReply(data, metadata, route, context);
+		if (dispatchers.isEmpty())
+			return transformer.handleAndReply(data, metadata, route, context);
+		RESULT result = dispatch(dispatchers.iterator(), data, metadataReader, route,
+				() -> transformer.handleAndReply(data, metadata, route, context));
 		return result;
 	}
 
+	private <RESULT> RESULT dispatch(Iterator<MetadataDecoderLFP.Dispatcher> dispatcherIterator, ByteBuf data,
+			MetadataReader metadataReader, String route, Callable<RESULT> handler) throws Exception {
+		if (!dispatcherIterator.hasNext())
+			return handler.call();
+		MetadataDecoderLFP.Dispatcher dispatcher = dispatcherIterator.next();
+		return dispatcher.dispatch(data, metadataReader, route,
+				() -> dispatch(dispatcherIterator, data, metadataReader, route, handler));
+	}
+
 	private String getRoute(MetadataReader metadataReader) {
 		Stream<String> stream = Stream.empty();
 		stream = Stream.concat(stream, metadataReader.streamStrings(MimeTypes.MIME_TYPE_SERVICE));
@@ -71,6 +123,9 @@ public class MetadataDecoderLFP implements MetadataDecoder {
 	private SpanContext readTracingSpanContext(MetadataReader metadataReader) {
 		if (tracer == null)
 			return null;
+		SpanContext binaryContext = BinaryTraceContext.extract(tracer, metadataReader);
+		if (binaryContext != null)
+			return binaryContext;
 		Map<String, String> tracerMetadata = new LinkedHashMap<>();
 		metadataReader.streamEntriesNonEmpty(MimeTypes.MIME_TYPE_TRACER)
 				.forEach(ent -> tracerMetadata.computeIfAbsent(ent.getKey(), nil -> ent.getValue()));
@@ -110,6 +110,19 @@ public class MetadataWriter {
 		});
 	}
 
+	/**
+	 * appends entries that are already encoded as composite metadata, the writer
+	 * takes ownership of the buffer
+	 */
+	public void writeEncoded(ByteBuf encodedMetadata) {
+		Objects.requireNonNull(encodedMetadata);
+		if (!encodedMetadata.isReadable()) {
+			encodedMetadata.release();
+			return;
+		}
+		getCompositeByteBuf().addComponent(true, encodedMetadata);
+	}
+
 	public <X> void write(MimeType mimeType, Stream<X> valueStream, Function<Stream<X>, Stream<ByteBuf>> encoder) {
 		Objects.requireNonNull(mimeType);
 		Objects.requireNonNull(valueStream);
@@ -7,51 +7,115 @@ import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 import java.util.stream.Stream;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.opentracing.SpanContext;
 import io.rsocket.ipc.MetadataEncoder;
+import io.rsocket.ipc.capture.CapturedMetadata;
+import io.rsocket.ipc.capture.MetadataCapture;
 import io.rsocket.ipc.decoders.MetadataWriter;
 import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.tracer.BinaryTraceContext;
+import io.rsocket.ipc.tracer.TracingFormat;
 import io.rsocket.ipc.util.MetadataUtils;
 import io.rsocket.ipc.util.MetadataUtils.DisposableAddList;
 import reactor.core.Disposable;
+import reactor.core.Disposables;
 
 public class MetadataEncoderLFP implements MetadataEncoder {
 
 	public static interface Interceptor extends Consumer<MetadataWriter> {
 	};
 
+	/**
+	 * An interceptor that writes the same metadata on every call. Its output is
+	 * rendered once and appended to each request as a slice of the cached
+	 * buffer. Static output is written before the output of other interceptors.
+	 */
+	public static interface StaticInterceptor extends Interceptor {
+	};
+
 	private final ByteBufAllocator allocator;
+	private final TracingFormat tracingFormat;
+	private final ToIntFunction<SpanContext> traceFlagsFunction;
 	private final DisposableAddList<MetadataEncoderLFP.Interceptor> interceptors = DisposableAddList.create();
+	private final DisposableAddList<MetadataEncoderLFP.Interceptor> staticInterceptors = DisposableAddList.create();
+	private final DisposableAddList<MetadataCapture> captures = DisposableAddList.create();
+	private final AtomicLong staticInterceptorsVersion = new AtomicLong();
+	private volatile StaticMetadata staticMetadata;
 
 	public MetadataEncoderLFP(MetadataEncoderLFP.Interceptor... interceptors) {
 		this(ByteBufAllocator.DEFAULT, interceptors);
 	}
 
 	public MetadataEncoderLFP(ByteBufAllocator allocator, MetadataEncoderLFP.Interceptor... interceptors) {
+		this(allocator, TracingFormat.QUERY_STRING, null, interceptors);
+	}
+
+	/**
+	 * only use {@link TracingFormat#BINARY} once every decoder reading this
+	 * metadata supports it. Binary tracing carries W3C trace flags, which
+	 * OpenTracing doesn't expose, so it requires a function that returns them for
+	 * a span context. EX:
+	 *
+	 * <pre>
+	 * new MetadataEncoderLFP(ByteBufAllocator.DEFAULT, TracingFormat.BINARY,
+	 * 		ctx -> ((JaegerSpanContext) ctx).isSampled() ? BinaryTraceContext.FLAG_SAMPLED : 0);
+	 * </pre>
+	 */
+	public MetadataEncoderLFP(ByteBufAllocator allocator, TracingFormat tracingFormat,
+			ToIntFunction<SpanContext> traceFlagsFunction, MetadataEncoderLFP.Interceptor... interceptors) {
 		this.allocator = Objects.requireNonNull(allocator);
+		this.tracingFormat = Objects.requireNonNull(tracingFormat);
+		if (TracingFormat.BINARY.equals(tracingFormat) && traceFlagsFunction == null)
+			throw new IllegalArgumentException("binary tracing requires a trace flags function");
+		this.traceFlagsFunction = traceFlagsFunction;
 		if (interceptors != null)
 			Arrays.asList(interceptors).stream().filter(Objects::nonNull).forEach(v -> this.addInterceptor(v));
 	}
 
 	public Disposable addInterceptor(MetadataEncoderLFP.Interceptor interceptor) {
 		Objects.requireNonNull(interceptor);
+		if (interceptor instanceof MetadataEncoderLFP.StaticInterceptor)
+			return addStaticInterceptor(interceptor);
 		return interceptors.disposableAdd(interceptor);
 	}
 
+	public Disposable addStaticInterceptor(MetadataEncoderLFP.Interceptor interceptor) {
+		Objects.requireNonNull(interceptor);
+		Disposable disposable = staticInterceptors.disposableAdd(interceptor);
+		invalidateStaticMetadata();
+		return Disposables.composite(disposable, this::invalidateStaticMetadata);
+	}
+
+	public Disposable addCapture(MetadataCapture capture) {
+		Objects.requireNonNull(capture);
+		return captures.disposableAdd(capture);
+	}
+
 	@Override
 	public final ByteBuf encode(ByteBuf metadata, SpanContext spanContext, String service, String... parts) {
 		MetadataWriter metadataWriter = new MetadataWriter(this.allocator, metadata);
 		this.writeMetadata(metadataWriter, spanContext, service, parts);
-		return metadataWriter.getCompositeByteBuf();
+		CompositeByteBuf compositeByteBuf = metadataWriter.getCompositeByteBuf();
+		if (!captures.isEmpty())
+			captures.forEach(v -> v.capture(CapturedMetadata.Direction.ENCODE, compositeByteBuf));
+		return compositeByteBuf;
 	}
 
 	protected void writeMetadata(MetadataWriter metadataWriter, SpanContext spanContext, String service,
 			String... parts) {
+		ByteBuf staticMetadataBuffer = getStaticMetadataBuffer();
+		if (staticMetadataBuffer != null)
+			metadataWriter.writeEncoded(staticMetadataBuffer.retainedSlice());
 		interceptors.forEach(interceptor -> interceptor.accept(metadataWriter));
 		writeRoutingInfo(metadataWriter, service, parts);
 		writeTracingSpanContext(metadataWriter, spanContext);
@@ -69,6 +133,14 @@ public class MetadataEncoderLFP implements MetadataEncoder {
 	private void writeTracingSpanContext(MetadataWriter metadataWriter, SpanContext spanContext) {
 		if (spanContext == null)
 			return;
+		if (TracingFormat.BINARY.equals(tracingFormat)) {
+			ByteBuf traceContext = BinaryTraceContext.encode(allocator, spanContext,
+					traceFlagsFunction.applyAsInt(spanContext));
+			if (traceContext != null) {
+				metadataWriter.write(MimeTypes.MIME_TYPE_TRACER_BINARY, Stream.of(traceContext), s -> s);
+				return;
+			}
+		}
 		Iterable<Entry<String, String>> items = spanContext.baggageItems();
 		if (items == null)
 			return;
@@ -77,4 +149,46 @@ public class MetadataEncoderLFP implements MetadataEncoder {
 			paramMap.computeIfAbsent(ent.getKey(), nil -> new LinkedHashSet<>()).add(ent.getValue());
 		metadataWriter.writeEntries(MimeTypes.MIME_TYPE_TRACER, paramMap);
 	}
+
+	private ByteBuf getStaticMetadataBuffer() {
+		if (staticInterceptors.isEmpty())
+			return null;
+		long version = staticInterceptorsVersion.get();
+		StaticMetadata current = staticMetadata;
+		if (current != null && current.version == version)
+			return current.buffer;
+		// a render that races with an add or dispose is stored under its stale
+		// version, so it is rendered again on the next call
+		StaticMetadata rendered = new StaticMetadata(version, renderStaticMetadata());
+		staticMetadata = rendered;
+		return rendered.buffer;
+	}
+
+	private ByteBuf renderStaticMetadata() {
+		MetadataWriter metadataWriter = new MetadataWriter(UnpooledByteBufAllocator.DEFAULT, null);
+		staticInterceptors.forEach(interceptor -> interceptor.accept(metadataWriter));
+		CompositeByteBuf compositeByteBuf = metadataWriter.getCompositeByteBuf();
+		try {
+			// unreleasable so that slices handed out stay valid after invalidation
+			return Unpooled.unreleasableBuffer(Unpooled.copiedBuffer(compositeByteBuf));
+		} finally {
+			compositeByteBuf.release();
+		}
+	}
+
+	private void invalidateStaticMetadata() {
+		staticInterceptorsVersion.incrementAndGet();
+		staticMetadata = null;
+	}
+
+	private static class StaticMetadata {
+
+		private final long version;
+		private final ByteBuf buffer;
+
+		public StaticMetadata(long version, ByteBuf buffer) {
+			this.version = version;
+			this.buffer = buffer;
+		}
+	}
 }
@@ -0,0 +1,394 @@
+package io.rsocket.ipc.idempotency;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.rsocket.Payload;
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.util.DefaultPayload;
+import reactor.core.publisher.Mono;
+
+/**
+ * Deduplicates requests that carry an {@link IdempotencyKey}. Keys are scoped
+ * to the caller by the scope function (ex: the authenticated principal or
+ * tenant) and to the route. The first request for a key invokes the handler,
+ * concurrent duplicates attach to its result and later duplicates are answered
+ * from a copy of the response until the ttl passes. EX:
+ *
+ * <pre>
+ * decoder.addDispatcher(new IdempotencyDispatcher(reader -> reader.streamStrings(PRINCIPAL).findFirst().orElse(null),
+ * 		Duration.ofMinutes(5), Duration.ofSeconds(30), 10_000, 64 * 1024 * 1024));
+ * </pre>
+ *
+ * Requests without a scope are not deduplicated. A key reused with a different
+ * request body is rejected with {@link IdempotencyKeyMismatchException} rather
+ * than answered with the first response. Failed requests are not cached so they
+ * can be retried, and a request still running after maxInFlight is replaced by
+ * the next duplicate. Only Mono results (request response and fire and forget)
+ * are deduplicated, other results pass through, as do duplicates that arrive
+ * before the first handler has returned. The memory limit counts keys as well
+ * as responses, requests that would exceed it are handled but not cached.
+ */
+public class IdempotencyDispatcher implements MetadataDecoderLFP.Dispatcher {
+
+	private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw java.lang.RuntimeException.class.isAssignableFrom(e.getClass())
+					? java.lang.RuntimeException.class.cast(e)
+					: new java.lang.RuntimeException(e);
+		}
+	});
+
+	// hash, entry, key and map node objects
+	private static final int ENTRY_OVERHEAD_BYTES = 256;
+	private static final int SWEEP_BATCH_SIZE = 16;
+
+	private final Function<MetadataReader, String> scopeFunction;
+	private final long ttlNanos;
+	private final long maxInFlightNanos;
+	private final int maxEntries;
+	private final long maxBytes;
+	private final ConcurrentHashMap<CacheKey, Entry> cache = new ConcurrentHashMap<>();
+	private final AtomicInteger entryCount = new AtomicInteger();
+	private final AtomicLong usedBytes = new AtomicLong();
+	private final ReentrantLock sweepLock = new ReentrantLock();
+	private Iterator<Map.Entry<CacheKey, Entry>> sweepIterator;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder attached = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder uncached = new LongAdder();
+	private final LongAdder mismatched = new LongAdder();
+
+	/**
+	 * @param scopeFunction returns the identity keys are scoped to, or null to
+	 *                      skip deduplication
+	 * @param ttl           how long completed responses are kept
+	 * @param maxInFlight   how long a running request can be attached to before a
+	 *                      duplicate runs the handler again
+	 */
+	public IdempotencyDispatcher(Function<MetadataReader, String> scopeFunction, Duration ttl, Duration maxInFlight,
+			int maxEntries, long maxBytes) {
+		this.scopeFunction = Objects.requireNonNull(scopeFunction);
+		Objects.requireNonNull(ttl);
+		Objects.requireNonNull(maxInFlight);
+		if (ttl.isNegative() || ttl.isZero())
+			throw new IllegalArgumentException("ttl must be greater than 0");
+		if (maxInFlight.isNegative() || maxInFlight.isZero())
+			throw new IllegalArgumentException("maxInFlight must be greater than 0");
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries must be greater than 0");
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("maxBytes must not be negative");
+		this.ttlNanos = ttl.toNanos();
+		this.maxInFlightNanos = maxInFlight.toNanos();
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <RESULT> RESULT dispatch(ByteBuf data, MetadataReader metadataReader, String route,
+			Callable<RESULT> handler) throws Exception {
+		String key = IdempotencyKey.read(metadataReader).orElse(null);
+		if (key == null)
+			return handler.call();
+		String scope = scopeFunction.apply(metadataReader);
+		if (scope == null)
+			return handler.call();
+		CacheKey cacheKey = new CacheKey(scope, route, key);
+		Entry created = new Entry(hash(data), cacheKey.size());
+		while (true) {
+			Entry existing = cache.get(cacheKey);
+			if (existing != null && existing.isExpired(System.nanoTime())) {
+				remove(cacheKey, existing);
+				continue;
+			}
+			if (existing != null) {
+				if (!MessageDigest.isEqual(existing.requestHash, created.requestHash)) {
+					mismatched.increment();
+					throw new IdempotencyKeyMismatchException("idempotency key reused with a different request:" + route);
+				}
+				if (existing.response != null) {
+					hits.increment();
+					return (RESULT) existing.response.toMono();
+				}
+				// the result type is only known once the first handler returned a Mono,
+				// until then (or for streams) the duplicate is handled on its own
+				Mono<CachedResponse> shared = existing.shared;
+				if (shared == null) {
+					uncached.increment();
+					return handler.call();
+				}
+				attached.increment();
+				return (RESULT) shared.flatMap(CachedResponse::toMono);
+			}
+			if (!reserve(created.bytes)) {
+				uncached.increment();
+				return handler.call();
+			}
+			if (cache.putIfAbsent(cacheKey, created) == null)
+				break;
+			unreserve(created.bytes);
+		}
+		misses.increment();
+		RESULT result;
+		try {
+			result = handler.call();
+		} catch (Throwable t) {
+			remove(cacheKey, created);
+			throw t;
+		}
+		if (!(result instanceof Mono)) {
+			remove(cacheKey, created);
+			return result;
+		}
+		// cache() keeps the source running if the first subscriber cancels, so
+		// attached duplicates still get the response
+		Mono<CachedResponse> shared = ((Mono<Object>) result).map(CachedResponse::create)
+				.defaultIfEmpty(CachedResponse.EMPTY).doOnNext(response -> complete(cacheKey, created, response))
+				.doOnError(t -> remove(cacheKey, created)).cache();
+		created.shared = shared;
+		return (RESULT) shared.flatMap(CachedResponse::toMono);
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * duplicates that arrived while the first request was still running
+	 */
+	public long getAttached() {
+		return attached.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * requests or responses that weren't cached because a limit was reached
+	 */
+	public long getUncached() {
+		return uncached.sum();
+	}
+
+	/**
+	 * requests rejected because their key was used with a different body
+	 */
+	public long getMismatched() {
+		return mismatched.sum();
+	}
+
+	public int getSize() {
+		return entryCount.get();
+	}
+
+	/**
+	 * approximate bytes held by entries, counting keys and responses
+	 */
+	public long getUsedBytes() {
+		return usedBytes.get();
+	}
+
+	public void evictExpired() {
+		long now = System.nanoTime();
+		cache.forEach((cacheKey, entry) -> {
+			if (entry.isExpired(now))
+				remove(cacheKey, entry);
+		});
+	}
+
+	private boolean reserve(long bytes) {
+		sweep(System.nanoTime());
+		if (entryCount.incrementAndGet() > maxEntries) {
+			entryCount.decrementAndGet();
+			return false;
+		}
+		if (usedBytes.addAndGet(bytes) > maxBytes) {
+			unreserve(bytes);
+			return false;
+		}
+		return true;
+	}
+
+	private void unreserve(long bytes) {
+		entryCount.decrementAndGet();
+		usedBytes.addAndGet(-bytes);
+	}
+
+	/**
+	 * checks a fixed number of entries, continuing where the last sweep stopped,
+	 * so adding an entry costs the same whatever the size of the cache
+	 */
+	private void sweep(long now) {
+		if (!sweepLock.tryLock())
+			return;
+		try {
+			for (int i = 0; i < SWEEP_BATCH_SIZE; i++) {
+				if (sweepIterator == null || !sweepIterator.hasNext()) {
+					sweepIterator = cache.entrySet().iterator();
+					if (!sweepIterator.hasNext())
+						return;
+				}
+				Map.Entry<CacheKey, Entry> entry = sweepIterator.next();
+				if (entry.getValue().isExpired(now))
+					remove(entry.getKey(), entry.getValue());
+			}
+		} finally {
+			sweepLock.unlock();
+		}
+	}
+
+	private void complete(CacheKey cacheKey, Entry entry, CachedResponse response) {
+		if (usedBytes.addAndGet(response.size) > maxBytes) {
+			usedBytes.addAndGet(-response.size);
+			uncached.increment();
+			remove(cacheKey, entry);
+			return;
+		}
+		synchronized (entry) {
+			entry.bytes += response.size;
+		}
+		entry.expiresAt = System.nanoTime() + ttlNanos;
+		entry.response = response;
+		// the entry may have been removed while the response was being produced
+		if (cache.get(cacheKey) != entry)
+			release(entry);
+	}
+
+	private void remove(CacheKey cacheKey, Entry entry) {
+		if (cache.remove(cacheKey, entry)) {
+			entryCount.decrementAndGet();
+			release(entry);
+		}
+	}
+
+	private void release(Entry entry) {
+		synchronized (entry) {
+			if (entry.bytes > 0)
+				usedBytes.addAndGet(-entry.bytes);
+			entry.bytes = 0;
+		}
+	}
+
+	private static byte[] hash(ByteBuf data) {
+		MessageDigest digest = DIGEST.get();
+		digest.reset();
+		if (data != null && data.isReadable())
+			for (ByteBuffer byteBuffer : data.nioBuffers())
+				digest.update(byteBuffer);
+		return digest.digest();
+	}
+
+	private static class CacheKey {
+
+		private final String scope;
+		private final String route;
+		private final String key;
+		private final int hashCode;
+
+		public CacheKey(String scope, String route, String key) {
+			this.scope = scope;
+			this.route = route;
+			this.key = key;
+			this.hashCode = Objects.hash(scope, route, key);
+		}
+
+		/**
+		 * approximate retained size of the key and its entry, the strings are client
+		 * controlled so they count against the memory limit
+		 */
+		public int size() {
+			return ENTRY_OVERHEAD_BYTES + 2 * (scope.length() + (route == null ? 0 : route.length()) + key.length());
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof CacheKey))
+				return false;
+			CacheKey other = (CacheKey) obj;
+			return key.equals(other.key) && Objects.equals(route, other.route) && scope.equals(other.scope);
+		}
+	}
+
+	private class Entry {
+
+		private final byte[] requestHash;
+		private final long createdAt = System.nanoTime();
+		private volatile Mono<CachedResponse> shared;
+		private volatile CachedResponse response;
+		private volatile long expiresAt;
+		private long bytes;
+
+		public Entry(byte[] requestHash, long bytes) {
+			this.requestHash = requestHash;
+			this.bytes = bytes;
+		}
+
+		public boolean isExpired(long now) {
+			if (response == null)
+				return now - createdAt > maxInFlightNanos;
+			return now - expiresAt > 0;
+		}
+	}
+
+	private static class CachedResponse {
+
+		private static final CachedResponse EMPTY = new CachedResponse(null, null);
+
+		private final byte[] data;
+		private final byte[] metadata;
+		private final int size;
+
+		private CachedResponse(byte[] data, byte[] metadata) {
+			this.data = data;
+			this.metadata = metadata;
+			this.size = (data == null ? 0 : data.length) + (metadata == null ? 0 : metadata.length);
+		}
+
+		public static CachedResponse create(Object value) {
+			if (!(value instanceof Payload))
+				throw new IllegalStateException("idempotent requests require a Payload result");
+			Payload payload = (Payload) value;
+			try {
+				byte[] data = ByteBufUtil.getBytes(payload.sliceData());
+				byte[] metadata = payload.hasMetadata() ? ByteBufUtil.getBytes(payload.sliceMetadata()) : null;
+				return new CachedResponse(data, metadata);
+			} finally {
+				payload.release();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		public <X> Mono<X> toMono() {
+			if (this == EMPTY)
+				return Mono.empty();
+			return Mono.fromSupplier(() -> (X) DefaultPayload.create(data, metadata));
+		}
+	}
+}
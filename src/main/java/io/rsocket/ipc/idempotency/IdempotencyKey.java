@@ -0,0 +1,100 @@
+package io.rsocket.ipc.idempotency;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+import io.rsocket.ipc.decoders.MetadataWriter;
+import io.rsocket.ipc.encoders.MetadataEncoderLFP;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.util.MetadataUtils;
+
+/**
+ * Helpers for the idempotency key metadata entry. A client must send the same
+ * key on every retry of a logical call, so the key has to be tied to the call
+ * rather than to the thread that happens to encode it. A retry after
+ * {@code timeout(..).retry(n)} is encoded on the timer thread. EX:
+ *
+ * <pre>
+ * String key = IdempotencyKey.create();
+ * MetadataEncoderLFP encoder = new MetadataEncoderLFP(IdempotencyKey.encoderInterceptor(() -> key));
+ * // build the client for this call with the encoder, every retry sends the same key
+ * </pre>
+ */
+public class IdempotencyKey {
+
+	/**
+	 * longer keys are ignored by {@link #read(MetadataReader)}
+	 */
+	public static final int MAX_LENGTH = 256;
+	private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+	public static String create() {
+		return UUID.randomUUID().toString();
+	}
+
+	public static void write(MetadataWriter metadataWriter, String key) {
+		Objects.requireNonNull(metadataWriter);
+		if (MetadataUtils.requireNonEmpty(key).length() > MAX_LENGTH)
+			throw new IllegalArgumentException("idempotency key longer than " + MAX_LENGTH);
+		metadataWriter.writeString(MimeTypes.MIME_TYPE_IDEMPOTENCY_KEY, key);
+	}
+
+	public static Optional<String> read(MetadataReader metadataReader) {
+		Objects.requireNonNull(metadataReader);
+		return metadataReader.streamStringsNonEmpty(MimeTypes.MIME_TYPE_IDEMPOTENCY_KEY)
+				.filter(key -> key.length() <= MAX_LENGTH).findFirst();
+	}
+
+	/**
+	 * the key bound to the current thread by {@link #callWith(String, Callable)}
+	 */
+	public static Optional<String> current() {
+		return Optional.ofNullable(CURRENT.get());
+	}
+
+	/**
+	 * binds the key to the current thread while the callable runs, for use with
+	 * {@link #threadBoundEncoderInterceptor()}. Only safe when the request and all
+	 * of its retries are encoded on the calling thread, a reactive retry goes out
+	 * without the key and runs twice.
+	 */
+	public static <X> X callWith(String key, Callable<X> callable) throws Exception {
+		Objects.requireNonNull(callable);
+		String previous = CURRENT.get();
+		CURRENT.set(key);
+		try {
+			return callable.call();
+		} finally {
+			if (previous == null)
+				CURRENT.remove();
+			else
+				CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * writes the key bound to the current thread, if any. Subject to the thread
+	 * limits described in {@link #callWith(String, Callable)}, prefer
+	 * {@link #encoderInterceptor(Supplier)}.
+	 */
+	public static MetadataEncoderLFP.Interceptor threadBoundEncoderInterceptor() {
+		return encoderInterceptor(() -> CURRENT.get());
+	}
+
+	/**
+	 * writes the key returned by the supplier, which should return the key of the
+	 * logical call on every retry
+	 */
+	public static MetadataEncoderLFP.Interceptor encoderInterceptor(Supplier<String> keySupplier) {
+		Objects.requireNonNull(keySupplier);
+		return writer -> {
+			String key = keySupplier.get();
+			if (MetadataUtils.nonEmpty(key))
+				write(writer, key);
+		};
+	}
+}
@@ -0,0 +1,11 @@
+package io.rsocket.ipc.idempotency;
+
+public class IdempotencyKeyMismatchException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public IdempotencyKeyMismatchException(String message) {
+		super(message);
+	}
+
+}
@@ -7,6 +7,10 @@ public class MimeTypes {
 	public static final MimeType MIME_TYPE_SERVICE = MimeTypes.create(WellKnownMimeType.MESSAGE_RSOCKET_ROUTING);
 	public static final MimeType MIME_TYPE_METHOD = MimeTypes.create(MIME_TYPE_SERVICE.getString() + "/method");
 	public static final MimeType MIME_TYPE_TRACER = MimeTypes.create("message/x.rsocket.ipc.tracer.v0");
+	public static final MimeType MIME_TYPE_TRACER_BINARY = MimeTypes.create("message/x.rsocket.ipc.tracer.binary.v0");
+	public static final MimeType MIME_TYPE_PRIORITY = MimeTypes.create("message/x.rsocket.ipc.priority.v0");
+	public static final MimeType MIME_TYPE_DEADLINE = MimeTypes.create("message/x.rsocket.ipc.deadline.v0");
+	public static final MimeType MIME_TYPE_IDEMPOTENCY_KEY = MimeTypes.create("message/x.rsocket.ipc.idempotency-key.v0");
 
 	public static MimeType create(String mimeType) {
 		return new MimeType.Impl(mimeType);
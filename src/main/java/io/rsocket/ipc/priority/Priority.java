@@ -0,0 +1,63 @@
+package io.rsocket.ipc.priority;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import io.rsocket.ipc.decoders.MetadataWriter;
+import io.rsocket.ipc.encoders.MetadataEncoderLFP;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.util.MetadataUtils;
+
+public enum Priority {
+	INTERACTIVE(8), DEFAULT(4), BULK(1);
+
+	private final int weight;
+
+	private Priority(int weight) {
+		this.weight = weight;
+	}
+
+	/**
+	 * the share of dispatch slots this priority receives when all priorities have
+	 * queued requests
+	 */
+	public int getWeight() {
+		return weight;
+	}
+
+	public void write(MetadataWriter metadataWriter) {
+		Objects.requireNonNull(metadataWriter);
+		metadataWriter.writeString(MimeTypes.MIME_TYPE_PRIORITY, this.name());
+	}
+
+	public static MetadataEncoderLFP.StaticInterceptor encoderInterceptor(Priority priority) {
+		Objects.requireNonNull(priority);
+		return writer -> priority.write(writer);
+	}
+
+	public static MetadataEncoderLFP.Interceptor encoderInterceptor(Supplier<Priority> prioritySupplier) {
+		Objects.requireNonNull(prioritySupplier);
+		return writer -> {
+			Priority priority = prioritySupplier.get();
+			if (priority != null)
+				priority.write(writer);
+		};
+	}
+
+	public static Optional<Priority> read(MetadataReader metadataReader) {
+		Objects.requireNonNull(metadataReader);
+		return metadataReader.streamStringsNonEmpty(MimeTypes.MIME_TYPE_PRIORITY).map(Priority::parse)
+				.filter(Objects::nonNull).findFirst();
+	}
+
+	private static Priority parse(String value) {
+		if (MetadataUtils.isNullOrEmpty(value))
+			return null;
+		for (Priority priority : Priority.values())
+			if (priority.name().equalsIgnoreCase(value))
+				return priority;
+		return null;
+	}
+}
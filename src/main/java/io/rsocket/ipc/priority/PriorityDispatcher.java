@@ -0,0 +1,288 @@
+package io.rsocket.ipc.priority;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.util.MetadataUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Limits the number of requests that are subscribed at once. Requests that
+ * can't start right away wait in a bounded queue per {@link Priority}, and the
+ * queues are drained with weighted round robin so bulk traffic can't block
+ * interactive calls but is never starved. EX:
+ *
+ * <pre>
+ * decoder.addDispatcher(new PriorityDispatcher(64));
+ * encoder.addInterceptor(Priority.encoderInterceptor(Priority.INTERACTIVE));
+ * </pre>
+ *
+ * The handler is still invoked during decode, only the subscription to the
+ * publisher it returns is queued.
+ */
+public class PriorityDispatcher implements MetadataDecoderLFP.Dispatcher {
+
+	private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	private final int maxConcurrency;
+	private final Priority defaultPriority;
+	private final Scheduler scheduler;
+	private final Map<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+	private final Lane[] laneArray = new Lane[PRIORITIES.length];
+	private final int[] credits = new int[PRIORITIES.length];
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger wip = new AtomicInteger();
+
+	public PriorityDispatcher(int maxConcurrency) {
+		this(maxConcurrency, DEFAULT_QUEUE_CAPACITY, Priority.DEFAULT, Schedulers.parallel());
+	}
+
+	public PriorityDispatcher(int maxConcurrency, int queueCapacity, Priority defaultPriority, Scheduler scheduler) {
+		if (maxConcurrency <= 0)
+			throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+		if (queueCapacity <= 0)
+			throw new IllegalArgumentException("queueCapacity must be greater than 0");
+		this.maxConcurrency = maxConcurrency;
+		this.defaultPriority = Objects.requireNonNull(defaultPriority);
+		this.scheduler = Objects.requireNonNull(scheduler);
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			Lane lane = new Lane(PRIORITIES[i], queueCapacity);
+			this.lanes.put(lane.priority, lane);
+			this.laneArray[i] = lane;
+			this.credits[i] = lane.priority.getWeight();
+		}
+	}
+
+	@Override
+	public <RESULT> RESULT dispatch(ByteBuf data, MetadataReader metadataReader, String route,
+			Callable<RESULT> handler) throws Exception {
+		Lane lane = lanes.get(Priority.read(metadataReader).orElse(defaultPriority));
+		RESULT result = handler.call();
+		return MetadataUtils.transformPublisher(result, mono -> Mono.defer(() -> {
+			Task task = new Task(lane);
+			return mono.delaySubscription(task.permit()).doFinally(nil -> task.release());
+		}), flux -> Flux.defer(() -> {
+			Task task = new Task(lane);
+			return flux.delaySubscription(task.permit()).doFinally(nil -> task.release());
+		}));
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public Stats getStats(Priority priority) {
+		Lane lane = lanes.get(Objects.requireNonNull(priority));
+		return new Stats(priority, lane.depth.get(), lane.dispatched.sum(), lane.rejected.sum(),
+				lane.waitNanos.sum(), lane.maxWaitNanos.get());
+	}
+
+	private void drain() {
+		if (wip.getAndIncrement() != 0)
+			return;
+		int missed = 1;
+		do {
+			// only the draining thread increments inFlight, releases only decrement
+			while (inFlight.get() < maxConcurrency) {
+				Task task = poll();
+				if (task == null)
+					break;
+				inFlight.incrementAndGet();
+				if (!task.grant())
+					inFlight.decrementAndGet();
+			}
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	private Task poll() {
+		for (int pass = 0; pass < 2; pass++) {
+			boolean waiting = false;
+			for (int i = 0; i < laneArray.length; i++) {
+				Queue<Task> queue = laneArray[i].queue;
+				if (queue.isEmpty())
+					continue;
+				if (credits[i] <= 0) {
+					waiting = true;
+					continue;
+				}
+				Task task = queue.poll();
+				// tasks cancelled while queued don't use the lane's credit
+				while (task != null && task.isCancelled())
+					task = queue.poll();
+				if (task == null)
+					continue;
+				credits[i]--;
+				return task;
+			}
+			if (!waiting)
+				return null;
+			// every non empty lane used its share, start a new round
+			for (int i = 0; i < laneArray.length; i++)
+				credits[i] = laneArray[i].priority.getWeight();
+		}
+		return null;
+	}
+
+	private static class Lane {
+
+		private final Priority priority;
+		private final int capacity;
+		private final Queue<Task> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger depth = new AtomicInteger();
+		private final LongAdder dispatched = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+		private final AtomicLong maxWaitNanos = new AtomicLong();
+
+		public Lane(Priority priority, int capacity) {
+			this.priority = priority;
+			this.capacity = capacity;
+		}
+	}
+
+	private class Task {
+
+		private static final int QUEUED = 0;
+		private static final int GRANTED = 1;
+		private static final int CANCELLED = 2;
+		private static final int RELEASED = 3;
+
+		private final Lane lane;
+		private final AtomicInteger state = new AtomicInteger(QUEUED);
+		private long enqueuedAt;
+		private MonoSink<Void> sink;
+
+		public Task(Lane lane) {
+			this.lane = lane;
+		}
+
+		public Mono<Void> permit() {
+			return Mono.create(sink -> {
+				if (lane.depth.incrementAndGet() > lane.capacity) {
+					lane.depth.decrementAndGet();
+					lane.rejected.increment();
+					state.set(CANCELLED);
+					sink.error(new RejectedExecutionException("priority queue full:" + lane.priority));
+					return;
+				}
+				this.sink = sink;
+				this.enqueuedAt = System.nanoTime();
+				sink.onCancel(this::cancel);
+				lane.queue.offer(this);
+				drain();
+			});
+		}
+
+		public boolean grant() {
+			if (!state.compareAndSet(QUEUED, GRANTED))
+				return false;
+			lane.depth.decrementAndGet();
+			try {
+				scheduler.schedule(() -> sink.success());
+			} catch (RejectedExecutionException e) {
+				// the caller undoes inFlight, release sees a cancelled task and skips it
+				state.set(CANCELLED);
+				sink.error(e);
+				return false;
+			}
+			lane.dispatched.increment();
+			long waited = System.nanoTime() - enqueuedAt;
+			lane.waitNanos.add(waited);
+			lane.maxWaitNanos.accumulateAndGet(waited, Math::max);
+			return true;
+		}
+
+		public void release() {
+			if (state.compareAndSet(GRANTED, RELEASED)) {
+				inFlight.decrementAndGet();
+				drain();
+			} else
+				cancel();
+		}
+
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		private void cancel() {
+			if (!state.compareAndSet(QUEUED, CANCELLED))
+				return;
+			// drain only polls when a slot is free, don't leave the task behind
+			lane.queue.remove(this);
+			lane.depth.decrementAndGet();
+		}
+	}
+
+	public static class Stats {
+
+		private final Priority priority;
+		private final int queueDepth;
+		private final long dispatched;
+		private final long rejected;
+		private final long totalWaitNanos;
+		private final long maxWaitNanos;
+
+		public Stats(Priority priority, int queueDepth, long dispatched, long rejected, long totalWaitNanos,
+				long maxWaitNanos) {
+			this.priority = priority;
+			this.queueDepth = queueDepth;
+			this.dispatched = dispatched;
+			this.rejected = rejected;
+			this.totalWaitNanos = totalWaitNanos;
+			this.maxWaitNanos = maxWaitNanos;
+		}
+
+		public Priority getPriority() {
+			return priority;
+		}
+
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		public long getDispatched() {
+			return dispatched;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getTotalWaitNanos() {
+			return totalWaitNanos;
+		}
+
+		public long getMaxWaitNanos() {
+			return maxWaitNanos;
+		}
+
+		public long getAverageWaitNanos() {
+			return dispatched == 0 ? 0 : totalWaitNanos / dispatched;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats [priority=" + priority + ", queueDepth=" + queueDepth + ", dispatched=" + dispatched
+					+ ", rejected=" + rejected + ", totalWaitNanos=" + totalWaitNanos + ", maxWaitNanos="
+					+ maxWaitNanos + "]";
+		}
+
+	}
+}
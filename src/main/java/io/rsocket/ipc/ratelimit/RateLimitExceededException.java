@@ -0,0 +1,12 @@
+package io.rsocket.ipc.ratelimit;
+
+public class RateLimitExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RateLimitExceededException(String message) {
+		// rejections are expected under load, skip the stack trace
+		super(message, null, false, false);
+	}
+
+}
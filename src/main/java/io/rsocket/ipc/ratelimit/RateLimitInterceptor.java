@@ -0,0 +1,234 @@
+package io.rsocket.ipc.ratelimit;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.mimetype.MimeType;
+
+/**
+ * Limits requests per key, where the key is read from metadata (ex: tenant or
+ * client id). EX:
+ *
+ * <pre>
+ * decoder.addInterceptor(new RateLimitInterceptor(MimeTypes.create("client-id"), MissingKeyPolicy.REJECT, 100, 20));
+ * </pre>
+ *
+ * Each key gets a token bucket implemented as a generic cell rate algorithm, so
+ * the whole bucket is a single AtomicLong updated with compare and set. Buckets
+ * are kept in a sharded table and a bucket that has been idle long enough to
+ * refill completely is evicted, which doesn't change its behavior. Keys are
+ * usually client controlled, so the table is bounded: once it holds maxKeys
+ * buckets, new keys share one overflow bucket instead of getting a fresh burst.
+ */
+public class RateLimitInterceptor implements MetadataDecoderLFP.Interceptor {
+
+	/**
+	 * what to do with requests that don't carry a key
+	 */
+	public static enum MissingKeyPolicy {
+		/**
+		 * don't limit them
+		 */
+		PASS,
+		/**
+		 * reject them
+		 */
+		REJECT,
+		/**
+		 * limit them together with one shared bucket
+		 */
+		SHARED;
+	}
+
+	private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(1);
+	private static final int DEFAULT_MAX_KEYS = 100_000;
+	private static final int SWEEP_BATCH_SIZE = 16;
+
+	private final Function<MetadataReader, String> keyFunction;
+	private final MissingKeyPolicy missingKeyPolicy;
+	private final long emissionIntervalNanos;
+	private final long burstToleranceNanos;
+	private final int maxKeys;
+	private final long idleTimeoutNanos;
+	private final Shard[] shards;
+	private final int shardMask;
+	private final AtomicInteger keyCount = new AtomicInteger();
+	private final AtomicLong missingKeyBucket = new AtomicLong(System.nanoTime());
+	private final AtomicLong overflowBucket = new AtomicLong(System.nanoTime());
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder overflowed = new LongAdder();
+
+	public RateLimitInterceptor(MimeType keyMimeType, MissingKeyPolicy missingKeyPolicy, double permitsPerSecond,
+			int burst) {
+		this(keyReader(keyMimeType), missingKeyPolicy, permitsPerSecond, burst, DEFAULT_MAX_KEYS,
+				DEFAULT_IDLE_TIMEOUT);
+	}
+
+	public RateLimitInterceptor(Function<MetadataReader, String> keyFunction, MissingKeyPolicy missingKeyPolicy,
+			double permitsPerSecond, int burst, int maxKeys, Duration idleTimeout) {
+		this.keyFunction = Objects.requireNonNull(keyFunction);
+		this.missingKeyPolicy = Objects.requireNonNull(missingKeyPolicy);
+		if (!(permitsPerSecond > 0))
+			throw new IllegalArgumentException("permitsPerSecond must be greater than 0");
+		if (burst <= 0)
+			throw new IllegalArgumentException("burst must be greater than 0");
+		if (maxKeys <= 0)
+			throw new IllegalArgumentException("maxKeys must be greater than 0");
+		Objects.requireNonNull(idleTimeout);
+		this.emissionIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		this.burstToleranceNanos = this.emissionIntervalNanos * (burst - 1);
+		this.maxKeys = maxKeys;
+		// a bucket is only evicted once it would be full again
+		this.idleTimeoutNanos = Math.max(idleTimeout.toNanos(), this.emissionIntervalNanos * burst);
+		int shardCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4) * 2 - 1);
+		this.shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++)
+			this.shards[i] = new Shard();
+		this.shardMask = shardCount - 1;
+	}
+
+	@Override
+	public void accept(MetadataReader metadataReader) {
+		String key = keyFunction.apply(metadataReader);
+		long now = System.nanoTime();
+		AtomicLong bucket;
+		if (key != null)
+			bucket = getBucket(key, now);
+		else if (missingKeyPolicy == MissingKeyPolicy.PASS)
+			return;
+		else if (missingKeyPolicy == MissingKeyPolicy.REJECT) {
+			rejected.increment();
+			throw new RateLimitExceededException("rate limit key missing");
+		} else
+			bucket = missingKeyBucket;
+		if (!tryAcquire(bucket, now)) {
+			rejected.increment();
+			throw new RateLimitExceededException("rate limit exceeded:" + (key == null ? "<missing>" : key));
+		}
+	}
+
+	public boolean tryAcquire(String key) {
+		Objects.requireNonNull(key);
+		long now = System.nanoTime();
+		return tryAcquire(getBucket(key, now), now);
+	}
+
+	/**
+	 * removes buckets that have been idle for the idle timeout. This also runs a
+	 * few buckets at a time as new keys are added.
+	 */
+	public void evictIdle() {
+		long now = System.nanoTime();
+		for (Shard shard : shards)
+			shard.evictIdle(now);
+	}
+
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * requests whose key didn't fit in the table and used the overflow bucket
+	 */
+	public long getOverflowed() {
+		return overflowed.sum();
+	}
+
+	public int getKeyCount() {
+		return keyCount.get();
+	}
+
+	private AtomicLong getBucket(String key, long now) {
+		Shard shard = shards[spread(key.hashCode()) & shardMask];
+		AtomicLong bucket = shard.buckets.get(key);
+		if (bucket == null)
+			bucket = shard.getOrCreate(key, now);
+		return bucket;
+	}
+
+	private boolean tryAcquire(AtomicLong bucket, long now) {
+		while (true) {
+			// theoretical arrival time, the bucket is full when it is in the past
+			long tat = bucket.get();
+			long start = tat - now < 0 ? now : tat;
+			if (start - now > burstToleranceNanos)
+				return false;
+			if (bucket.compareAndSet(tat, start + emissionIntervalNanos))
+				return true;
+		}
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private static Function<MetadataReader, String> keyReader(MimeType keyMimeType) {
+		Objects.requireNonNull(keyMimeType);
+		return reader -> reader.streamStringsNonEmpty(keyMimeType).findFirst().orElse(null);
+	}
+
+	private class Shard {
+
+		private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+		private final ReentrantLock sweepLock = new ReentrantLock();
+		private Iterator<Map.Entry<String, AtomicLong>> sweepIterator;
+
+		public AtomicLong getOrCreate(String key, long now) {
+			sweep(now);
+			if (keyCount.incrementAndGet() > maxKeys) {
+				keyCount.decrementAndGet();
+				overflowed.increment();
+				return overflowBucket;
+			}
+			AtomicLong bucket = new AtomicLong(now);
+			AtomicLong existing = buckets.putIfAbsent(key, bucket);
+			if (existing == null)
+				return bucket;
+			keyCount.decrementAndGet();
+			return existing;
+		}
+
+		public void evictIdle(long now) {
+			buckets.forEach((key, bucket) -> evictIfIdle(key, bucket, now));
+		}
+
+		/**
+		 * checks a fixed number of buckets, continuing where the last sweep stopped,
+		 * so adding a key costs the same whatever the size of the shard
+		 */
+		private void sweep(long now) {
+			if (!sweepLock.tryLock())
+				return;
+			try {
+				for (int i = 0; i < SWEEP_BATCH_SIZE; i++) {
+					if (sweepIterator == null || !sweepIterator.hasNext()) {
+						sweepIterator = buckets.entrySet().iterator();
+						if (!sweepIterator.hasNext())
+							return;
+					}
+					Map.Entry<String, AtomicLong> entry = sweepIterator.next();
+					evictIfIdle(entry.getKey(), entry.getValue(), now);
+				}
+			} finally {
+				sweepLock.unlock();
+			}
+		}
+
+		private void evictIfIdle(String key, AtomicLong bucket, long now) {
+			if (now - bucket.get() > idleTimeoutNanos && buckets.remove(key, bucket))
+				keyCount.decrementAndGet();
+		}
+	}
+
+}
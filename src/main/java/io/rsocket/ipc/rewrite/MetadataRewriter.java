@@ -0,0 +1,161 @@
+package io.rsocket.ipc.rewrite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.rsocket.Payload;
+import io.rsocket.ipc.decoders.MetadataWriter;
+import io.rsocket.ipc.mimetype.MimeType;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.util.ByteBufPayload;
+
+/**
+ * Rewrites composite metadata without decoding it, for gateways that forward
+ * requests after adding or stripping a few entries. EX:
+ *
+ * <pre>
+ * MetadataRewriter rewriter = new MetadataRewriter().remove(MimeTypes.create("password"))
+ * 		.replace(MimeTypes.create("principal"), writer -> writer.writeString(MimeTypes.create("principal"), user));
+ * </pre>
+ *
+ * Only entry headers are parsed. Runs of untouched entries are forwarded as
+ * retained slices of the inbound buffer, so the cost is proportional to the
+ * changes rather than the size of the metadata. A replaced entry is written at
+ * the position of its first occurrence, added entries are appended.
+ */
+public class MetadataRewriter {
+
+	private static final int WELL_KNOWN_MIME_TYPE_FLAG = 0x80;
+	private static final int CONTENT_LENGTH_BYTES = 3;
+
+	private final List<Operation> operations = new ArrayList<>();
+
+	public MetadataRewriter remove(MimeType mimeType) {
+		Objects.requireNonNull(mimeType);
+		operations.add(new Operation(mimeType, null));
+		return this;
+	}
+
+	public MetadataRewriter replace(MimeType mimeType, Consumer<MetadataWriter> writer) {
+		Objects.requireNonNull(mimeType);
+		Objects.requireNonNull(writer);
+		operations.add(new Operation(mimeType, writer));
+		return this;
+	}
+
+	public MetadataRewriter add(Consumer<MetadataWriter> writer) {
+		Objects.requireNonNull(writer);
+		operations.add(new Operation(null, writer));
+		return this;
+	}
+
+	/**
+	 * @return a new payload that shares the data of the given payload, which is
+	 *         not released
+	 */
+	public Payload rewrite(ByteBufAllocator allocator, Payload payload) {
+		Objects.requireNonNull(payload);
+		ByteBuf metadata = rewrite(allocator, payload.sliceMetadata());
+		return ByteBufPayload.create(payload.data().retainedSlice(), metadata);
+	}
+
+	/**
+	 * @return new composite metadata, the inbound buffer is not released
+	 */
+	public CompositeByteBuf rewrite(ByteBufAllocator allocator, ByteBuf metadata) {
+		Objects.requireNonNull(metadata);
+		MetadataWriter metadataWriter = new MetadataWriter(allocator, null);
+		CompositeByteBuf compositeByteBuf = metadataWriter.getCompositeByteBuf();
+		try {
+			boolean[] written = new boolean[operations.size()];
+			int runStart = metadata.readerIndex();
+			int index = runStart;
+			int end = metadata.writerIndex();
+			while (index < end) {
+				int entryEnd = getEntryEnd(metadata, index, end);
+				int match = -1;
+				for (int i = 0; i < operations.size(); i++) {
+					MimeType mimeType = operations.get(i).mimeType;
+					if (mimeType != null && matches(metadata, index, mimeType)) {
+						match = i;
+						break;
+					}
+				}
+				if (match != -1) {
+					if (index > runStart)
+						metadataWriter.writeEncoded(metadata.retainedSlice(runStart, index - runStart));
+					for (int i = match; i < operations.size(); i++) {
+						Operation operation = operations.get(i);
+						if (written[i] || operation.writer == null || !Objects.equals(operation.mimeType,
+								operations.get(match).mimeType))
+							continue;
+						operation.writer.accept(metadataWriter);
+						written[i] = true;
+					}
+					runStart = entryEnd;
+				}
+				index = entryEnd;
+			}
+			if (end > runStart)
+				metadataWriter.writeEncoded(metadata.retainedSlice(runStart, end - runStart));
+			for (int i = 0; i < operations.size(); i++) {
+				Operation operation = operations.get(i);
+				if (!written[i] && operation.writer != null)
+					operation.writer.accept(metadataWriter);
+			}
+		} catch (RuntimeException e) {
+			compositeByteBuf.release();
+			throw e;
+		}
+		return compositeByteBuf;
+	}
+
+	private static int getEntryEnd(ByteBuf metadata, int index, int end) {
+		int mimeTypeHeader = metadata.getUnsignedByte(index);
+		int contentLengthIndex = index + 1;
+		if ((mimeTypeHeader & WELL_KNOWN_MIME_TYPE_FLAG) == 0)
+			contentLengthIndex += mimeTypeHeader + 1;
+		if (contentLengthIndex + CONTENT_LENGTH_BYTES > end)
+			throw new IllegalArgumentException("malformed composite metadata at index:" + index);
+		int entryEnd = contentLengthIndex + CONTENT_LENGTH_BYTES + metadata.getUnsignedMedium(contentLengthIndex);
+		if (entryEnd > end)
+			throw new IllegalArgumentException("malformed composite metadata at index:" + index);
+		return entryEnd;
+	}
+
+	private static boolean matches(ByteBuf metadata, int index, MimeType mimeType) {
+		int mimeTypeHeader = metadata.getUnsignedByte(index);
+		if ((mimeTypeHeader & WELL_KNOWN_MIME_TYPE_FLAG) != 0) {
+			WellKnownMimeType wellKnownMimeType = mimeType.getWellKnownMimeType().orElse(null);
+			return wellKnownMimeType != null
+					&& wellKnownMimeType.getIdentifier() == (mimeTypeHeader & ~WELL_KNOWN_MIME_TYPE_FLAG);
+		}
+		// mime types are ascii, compare in place ignoring case like MimeType.equals
+		String value = mimeType.getString();
+		int length = mimeTypeHeader + 1;
+		if (value.length() != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			char c = (char) metadata.getUnsignedByte(index + 1 + i);
+			if (Character.toLowerCase(c) != Character.toLowerCase(value.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	private static class Operation {
+
+		private final MimeType mimeType;
+		private final Consumer<MetadataWriter> writer;
+
+		public Operation(MimeType mimeType, Consumer<MetadataWriter> writer) {
+			this.mimeType = mimeType;
+			this.writer = writer;
+		}
+	}
+}
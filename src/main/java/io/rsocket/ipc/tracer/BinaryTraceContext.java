@@ -0,0 +1,197 @@
+package io.rsocket.ipc.tracer;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.util.MetadataUtils;
+
+/**
+ * Encodes a span context with a fixed width layout modeled on the W3C
+ * traceparent header:
+ *
+ * <pre>
+ * version (1 byte) | trace id (16 bytes) | span id (8 bytes) | flags (1 byte)
+ * </pre>
+ *
+ * followed by optional baggage entries, each written as a 2 byte length
+ * prefixed utf8 key and value. The tracer receives the context as a
+ * "traceparent" text map entry followed by the baggage, read straight from the
+ * buffer, so decoding requires a tracer that extracts W3C trace context. Tracers
+ * configured for other propagation formats (ex: B3 or uber-trace-id) don't read
+ * the entry and the request arrives without a parent span.
+ * <p>
+ * OpenTracing doesn't expose the sampling decision, so callers pass the flags
+ * from a tracer specific source. Under W3C semantics flags of 0 mean the caller
+ * chose not to sample, and receivers using parent based sampling will drop the
+ * trace.
+ */
+public class BinaryTraceContext {
+
+	public static final String TRACEPARENT = "traceparent";
+	private static final byte VERSION = 0;
+	public static final int FLAG_SAMPLED = 1;
+	private static final int TRACE_ID_BYTES = 16;
+	private static final int SPAN_ID_BYTES = 8;
+	private static final int HEADER_BYTES = 1 + TRACE_ID_BYTES + SPAN_ID_BYTES + 1;
+	private static final int MAX_STRING_BYTES = 0xFFFF;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * @param flags the W3C trace flags, ex: {@link #FLAG_SAMPLED}
+	 * @return the encoded context or null if the trace or span id isn't hex
+	 *         (callers should fall back to the query string format)
+	 */
+	public static ByteBuf encode(ByteBufAllocator allocator, SpanContext spanContext, int flags) {
+		Objects.requireNonNull(allocator);
+		Objects.requireNonNull(spanContext);
+		String traceId = spanContext.toTraceId();
+		String spanId = spanContext.toSpanId();
+		if (!isHex(traceId, TRACE_ID_BYTES * 2) || !isHex(spanId, SPAN_ID_BYTES * 2))
+			return null;
+		ByteBuf byteBuf = allocator.buffer(HEADER_BYTES);
+		byteBuf.writeByte(VERSION);
+		writeHex(byteBuf, traceId, TRACE_ID_BYTES);
+		writeHex(byteBuf, spanId, SPAN_ID_BYTES);
+		byteBuf.writeByte(flags);
+		Iterable<Entry<String, String>> items = spanContext.baggageItems();
+		if (items != null)
+			for (Entry<String, String> ent : items) {
+				if (ent == null || MetadataUtils.isNullOrEmpty(ent.getKey()))
+					continue;
+				String value = ent.getValue() == null ? "" : ent.getValue();
+				if (ByteBufUtil.utf8Bytes(ent.getKey()) > MAX_STRING_BYTES
+						|| ByteBufUtil.utf8Bytes(value) > MAX_STRING_BYTES)
+					continue;
+				writeString(byteBuf, ent.getKey());
+				writeString(byteBuf, value);
+			}
+		return byteBuf;
+	}
+
+	/**
+	 * @return the extracted context, or null if no binary trace context is present
+	 *         or the tracer doesn't understand the traceparent entry
+	 */
+	public static SpanContext extract(Tracer tracer, MetadataReader metadataReader) {
+		Objects.requireNonNull(tracer);
+		Objects.requireNonNull(metadataReader);
+		ByteBuf byteBuf = metadataReader
+				.stream(mimeType -> Objects.equals(mimeType, MimeTypes.MIME_TYPE_TRACER_BINARY),
+						bb -> Stream.of(bb))
+				.filter(bb -> bb.readableBytes() >= HEADER_BYTES && bb.getByte(bb.readerIndex()) == VERSION)
+				.findFirst().orElse(null);
+		if (byteBuf == null)
+			return null;
+		return tracer.extract(Format.Builtin.TEXT_MAP, new Carrier(byteBuf));
+	}
+
+	private static boolean isHex(String value, int maxLength) {
+		if (MetadataUtils.isNullOrEmpty(value) || value.length() > maxLength)
+			return false;
+		for (int i = 0; i < value.length(); i++)
+			if (Character.digit(value.charAt(i), 16) < 0)
+				return false;
+		return true;
+	}
+
+	private static void writeHex(ByteBuf byteBuf, String hex, int byteCount) {
+		// left pad shorter ids (ex: 64 bit trace ids) with zeros
+		int padding = byteCount * 2 - hex.length();
+		for (int i = 0; i < byteCount; i++) {
+			int high = digit(hex, i * 2 - padding);
+			int low = digit(hex, i * 2 + 1 - padding);
+			byteBuf.writeByte((high << 4) | low);
+		}
+	}
+
+	private static int digit(String hex, int index) {
+		return index < 0 ? 0 : Character.digit(hex.charAt(index), 16);
+	}
+
+	private static void writeString(ByteBuf byteBuf, String value) {
+		byteBuf.writeShort(ByteBufUtil.utf8Bytes(value));
+		ByteBufUtil.writeUtf8(byteBuf, value);
+	}
+
+	private static String readHex(ByteBuf byteBuf, int index, int byteCount) {
+		char[] chars = new char[byteCount * 2];
+		for (int i = 0; i < byteCount; i++) {
+			int value = byteBuf.getUnsignedByte(index + i);
+			chars[i * 2] = HEX[value >>> 4];
+			chars[i * 2 + 1] = HEX[value & 0xF];
+		}
+		return new String(chars);
+	}
+
+	private static class Carrier implements TextMap {
+
+		private final ByteBuf byteBuf;
+
+		public Carrier(ByteBuf byteBuf) {
+			this.byteBuf = byteBuf;
+		}
+
+		@Override
+		public Iterator<Entry<String, String>> iterator() {
+			return new Iterator<Entry<String, String>>() {
+
+				private int index = -1;
+
+				@Override
+				public boolean hasNext() {
+					if (index == -1)
+						return true;
+					// a truncated entry ends the baggage
+					return readableString(index) && readableString(index + 2 + byteBuf.getUnsignedShort(index));
+				}
+
+				@Override
+				public Entry<String, String> next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+					if (index == -1) {
+						int start = byteBuf.readerIndex();
+						index = start + HEADER_BYTES;
+						String traceparent = "00-" + readHex(byteBuf, start + 1, TRACE_ID_BYTES) + "-"
+								+ readHex(byteBuf, start + 1 + TRACE_ID_BYTES, SPAN_ID_BYTES) + "-"
+								+ readHex(byteBuf, start + HEADER_BYTES - 1, 1);
+						return new SimpleImmutableEntry<>(TRACEPARENT, traceparent);
+					}
+					String key = readString();
+					String value = readString();
+					return new SimpleImmutableEntry<>(key, value);
+				}
+
+				private boolean readableString(int at) {
+					int end = byteBuf.writerIndex();
+					return at + 2 <= end && at + 2 + byteBuf.getUnsignedShort(at) <= end;
+				}
+
+				private String readString() {
+					int length = byteBuf.getUnsignedShort(index);
+					String value = byteBuf.toString(index + 2, length, MetadataUtils.CHARSET);
+					index += 2 + length;
+					return value;
+				}
+			};
+		}
+
+		@Override
+		public void put(String key, String value) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package io.rsocket.ipc.tracer;
+
+public enum TracingFormat {
+	/**
+	 * baggage items written as a url query string, readable by every version of
+	 * the decoder
+	 */
+	QUERY_STRING,
+	/**
+	 * fixed width trace id, span id and flags followed by length prefixed
+	 * baggage, see {@link BinaryTraceContext}. Receivers must use a tracer that
+	 * extracts W3C trace context (the "traceparent" key), other tracers see no
+	 * parent span. The encoder needs a function returning the trace flags, see
+	 * {@link io.rsocket.ipc.encoders.MetadataEncoderLFP}.
+	 */
+	BINARY;
+}
@@ -17,6 +17,7 @@ import java.util.Spliterators.AbstractSpliterator;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -25,6 +26,8 @@ import io.netty.buffer.Unpooled;
 import io.rsocket.metadata.WellKnownMimeType;
 import reactor.core.Disposable;
 import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 public class MetadataUtils {
 	public static final Charset CHARSET = StandardCharsets.UTF_8;
@@ -65,6 +68,20 @@ public class MetadataUtils {
 		return StreamSupport.stream(spliterator, false);
 	}
 
+	/**
+	 * Applies the matching transformer if the value is a Mono or Flux, any other
+	 * value is returned as is.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <X> X transformPublisher(X value, Function<Mono<?>, Mono<?>> monoTransformer,
+			Function<Flux<?>, Flux<?>> fluxTransformer) {
+		if (value instanceof Mono)
+			return (X) monoTransformer.apply((Mono<?>) value);
+		if (value instanceof Flux)
+			return (X) fluxTransformer.apply((Flux<?>) value);
+		return value;
+	}
+
 	public static String mimeTypeToString(WellKnownMimeType wellKnownMimeType) {
 		return wellKnownMimeType == null ? null : wellKnownMimeType.getString();
 	}
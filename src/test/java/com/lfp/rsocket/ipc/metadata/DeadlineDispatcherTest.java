@@ -0,0 +1,66 @@
+package com.lfp.rsocket.ipc.metadata;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.rsocket.ipc.MetadataDecoder;
+import io.rsocket.ipc.deadline.Deadline;
+import io.rsocket.ipc.deadline.DeadlineDispatcher;
+import io.rsocket.ipc.deadline.DeadlineExceededException;
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class DeadlineDispatcherTest {
+
+	@Test
+	public void test() throws Exception {
+		DeadlineDispatcher dispatcher = new DeadlineDispatcher();
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		decoder.addDispatcher(dispatcher);
+		{// expired requests never reach the handler
+			AtomicBoolean handled = new AtomicBoolean();
+			Assert.assertThrows(DeadlineExceededException.class,
+					() -> decode(decoder, Deadline.afterMillis(0), (data, metadata, route, spanContext) -> {
+						handled.set(true);
+						return Mono.empty();
+					}));
+			Assert.assertFalse(handled.get());
+			Assert.assertEquals(1, dispatcher.getShedOnDecode());
+		}
+		{// the deadline is exposed to the handler
+			Mono<Boolean> result = decode(decoder, Deadline.after(Duration.ofMinutes(1)),
+					(data, metadata, route, spanContext) -> {
+						Assert.assertTrue(Deadline.current().isPresent());
+						Assert.assertTrue(Deadline.read(metadata).isPresent());
+						return Mono.subscriberContext().map(ctx -> Deadline.fromContext(ctx).isPresent());
+					});
+			StepVerifier.create(result).expectNext(true).verifyComplete();
+			Assert.assertFalse(Deadline.current().isPresent());
+		}
+		{// running work is cancelled when the deadline passes
+			Mono<Object> result = decode(decoder, Deadline.afterMillis(100),
+					(data, metadata, route, spanContext) -> Mono.never());
+			StepVerifier.create(result).expectError(DeadlineExceededException.class).verify(Duration.ofSeconds(5));
+			Flux<Object> stream = decode(decoder, Deadline.afterMillis(100),
+					(data, metadata, route, spanContext) -> Flux.never());
+			StepVerifier.create(stream).expectError(DeadlineExceededException.class).verify(Duration.ofSeconds(5));
+			Assert.assertEquals(2, dispatcher.getCancelled());
+		}
+		{// requests without a deadline pass through
+			Mono<String> result = decode(decoder, null,
+					(data, metadata, route, spanContext) -> Mono.just(route));
+			StepVerifier.create(result).expectNext("DeadlineService.method").verifyComplete();
+		}
+	}
+
+	private static <RESULT> RESULT decode(MetadataDecoderLFP decoder, Deadline deadline,
+			MetadataDecoder.Handler<RESULT> handler) throws Exception {
+		return MetadataTestUtils.decode(decoder, Deadline.encoderInterceptor(() -> deadline), "DeadlineService",
+				"method", handler);
+	}
+}
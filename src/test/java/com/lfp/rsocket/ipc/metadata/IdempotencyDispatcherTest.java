@@ -0,0 +1,196 @@
+package com.lfp.rsocket.ipc.metadata;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.ipc.MetadataDecoder;
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.idempotency.IdempotencyDispatcher;
+import io.rsocket.ipc.idempotency.IdempotencyKey;
+import io.rsocket.ipc.idempotency.IdempotencyKeyMismatchException;
+import io.rsocket.ipc.mimetype.MimeType;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.util.MetadataUtils;
+import io.rsocket.util.DefaultPayload;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+public class IdempotencyDispatcherTest {
+
+	private static final MimeType MIME_TYPE_PRINCIPAL = MimeTypes.create("message/x.rsocket.ipc.test.principal");
+
+	@Test
+	public void test() throws Exception {
+		IdempotencyDispatcher dispatcher = createDispatcher(Duration.ofMinutes(1));
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		decoder.addDispatcher(dispatcher);
+		AtomicInteger handled = new AtomicInteger();
+		{// concurrent duplicates attach to the running request
+			MonoProcessor<Payload> response = MonoProcessor.create();
+			MetadataDecoder.Handler<Mono<Payload>> handler = (data, metadata, route, spanContext) -> {
+				handled.incrementAndGet();
+				return response;
+			};
+			Mono<Payload> first = decode(decoder, "alice", "a", "order", handler);
+			Mono<Payload> duplicate = decode(decoder, "alice", "a", "order", handler);
+			Assert.assertEquals(1, handled.get());
+			Assert.assertEquals(1, dispatcher.getAttached());
+			MonoProcessor<String> firstResult = first.map(Payload::getDataUtf8).toProcessor();
+			MonoProcessor<String> duplicateResult = duplicate.map(Payload::getDataUtf8).toProcessor();
+			long keyBytes = dispatcher.getUsedBytes();
+			Assert.assertTrue(keyBytes > 0);
+			response.onNext(DefaultPayload.create("done"));
+			Assert.assertEquals("done", firstResult.block(Duration.ofSeconds(5)));
+			Assert.assertEquals("done", duplicateResult.block(Duration.ofSeconds(5)));
+			Assert.assertEquals(keyBytes + 4, dispatcher.getUsedBytes());
+		}
+		{// completed requests are answered from the cache
+			Mono<Payload> cached = decode(decoder, "alice", "a", "order", (data, metadata, route, spanContext) -> {
+				handled.incrementAndGet();
+				return Mono.just(DefaultPayload.create("again"));
+			});
+			StepVerifier.create(cached.map(Payload::getDataUtf8)).expectNext("done").verifyComplete();
+			Assert.assertEquals(1, handled.get());
+			Assert.assertEquals(1, dispatcher.getHits());
+		}
+		{// keys are scoped to the caller
+			Mono<Payload> other = decode(decoder, "mallory", "a", "order", (data, metadata, route, spanContext) -> {
+				handled.incrementAndGet();
+				return Mono.just(DefaultPayload.create("mallory"));
+			});
+			StepVerifier.create(other.map(Payload::getDataUtf8)).expectNext("mallory").verifyComplete();
+			Assert.assertEquals(2, handled.get());
+		}
+		{// a key reused with a different body is rejected
+			Assert.assertThrows(IdempotencyKeyMismatchException.class,
+					() -> decode(decoder, "alice", "a", "another order", (data, metadata, route, spanContext) -> {
+						handled.incrementAndGet();
+						return Mono.just(DefaultPayload.create("again"));
+					}));
+			Assert.assertEquals(2, handled.get());
+			Assert.assertEquals(1, dispatcher.getMismatched());
+		}
+		{// failures are not cached
+			for (int i = 0; i < 2; i++) {
+				Mono<Payload> failed = decode(decoder, "alice", "b", "order", (data, metadata, route, spanContext) -> {
+					handled.incrementAndGet();
+					return Mono.error(new IllegalStateException());
+				});
+				StepVerifier.create(failed).expectError(IllegalStateException.class).verify();
+			}
+			Assert.assertEquals(4, handled.get());
+		}
+		{// responses over the memory limit are returned but not cached
+			String large = new String(new char[4096]).replace('\0', 'x');
+			for (int i = 0; i < 2; i++) {
+				Mono<Payload> result = decode(decoder, "alice", "c", "order", (data, metadata, route, spanContext) -> {
+					handled.incrementAndGet();
+					return Mono.just(DefaultPayload.create(large));
+				});
+				StepVerifier.create(result.map(Payload::getDataUtf8)).expectNext(large).verifyComplete();
+			}
+			Assert.assertEquals(6, handled.get());
+			Assert.assertEquals(2, dispatcher.getUncached());
+		}
+		{// requests without a key or a scope pass through
+			Mono<String> result = decode(decoder, "alice", null, "order",
+					(data, metadata, route, spanContext) -> Mono.just(route));
+			StepVerifier.create(result).expectNext("IdempotencyService.method").verifyComplete();
+			Mono<String> anonymous = decode(decoder, null, "a", "order",
+					(data, metadata, route, spanContext) -> Mono.just(route));
+			StepVerifier.create(anonymous).expectNext("IdempotencyService.method").verifyComplete();
+		}
+		Assert.assertEquals(2, dispatcher.getSize());
+	}
+
+	@Test
+	public void testMaxInFlight() throws Exception {
+		IdempotencyDispatcher dispatcher = createDispatcher(Duration.ofMillis(50));
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		decoder.addDispatcher(dispatcher);
+		AtomicInteger handled = new AtomicInteger();
+		MetadataDecoder.Handler<Mono<Payload>> stuck = (data, metadata, route, spanContext) -> {
+			handled.incrementAndGet();
+			return Mono.never();
+		};
+		decode(decoder, "alice", "a", "order", stuck).subscribe();
+		decode(decoder, "alice", "a", "order", stuck);
+		Assert.assertEquals(1, handled.get());
+		Thread.sleep(100);
+		// a handler that never terminates doesn't pin the key
+		Mono<Payload> retry = decode(decoder, "alice", "a", "order", (data, metadata, route, spanContext) -> {
+			handled.incrementAndGet();
+			return Mono.just(DefaultPayload.create("done"));
+		});
+		StepVerifier.create(retry.map(Payload::getDataUtf8)).expectNext("done").verifyComplete();
+		Assert.assertEquals(2, handled.get());
+	}
+
+	@Test
+	public void testStreams() throws Exception {
+		IdempotencyDispatcher dispatcher = createDispatcher(Duration.ofMinutes(1));
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		decoder.addDispatcher(dispatcher);
+		// a duplicate that arrives before the first handler returned is handled on
+		// its own, so it gets the publisher type it expects
+		Flux<String> first = decode(decoder, "alice", "a", "order", (data, metadata, route, spanContext) -> {
+			Flux<String> duplicate = decode(decoder, "alice", "a", "order",
+					(d, m, r, s) -> Flux.just("duplicate"));
+			return duplicate.concatWith(Flux.just("first"));
+		});
+		StepVerifier.create(first).expectNext("duplicate", "first").verifyComplete();
+		Assert.assertEquals(0, dispatcher.getAttached());
+		Assert.assertEquals(0, dispatcher.getSize());
+		Assert.assertEquals(0, dispatcher.getUsedBytes());
+	}
+
+	@Test
+	public void testKeysCountTowardsMaxBytes() throws Exception {
+		IdempotencyDispatcher dispatcher = createDispatcher(Duration.ofMinutes(1), 16);
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		decoder.addDispatcher(dispatcher);
+		AtomicInteger handled = new AtomicInteger();
+		for (int i = 0; i < 2; i++) {
+			Mono<Payload> result = decode(decoder, "alice", "a", "order", (data, metadata, route, spanContext) -> {
+				handled.incrementAndGet();
+				return Mono.just(DefaultPayload.create("done"));
+			});
+			StepVerifier.create(result.map(Payload::getDataUtf8)).expectNext("done").verifyComplete();
+		}
+		Assert.assertEquals(2, handled.get());
+		Assert.assertEquals(2, dispatcher.getUncached());
+		Assert.assertEquals(0, dispatcher.getUsedBytes());
+	}
+
+	private static IdempotencyDispatcher createDispatcher(Duration maxInFlight) {
+		return createDispatcher(maxInFlight, 2048);
+	}
+
+	private static IdempotencyDispatcher createDispatcher(Duration maxInFlight, long maxBytes) {
+		return new IdempotencyDispatcher(reader -> reader.streamStringsNonEmpty(MIME_TYPE_PRINCIPAL).findFirst().orElse(null),
+				Duration.ofMinutes(1), maxInFlight, 100, maxBytes);
+	}
+
+	private static <RESULT> RESULT decode(MetadataDecoderLFP decoder, String principal, String key, String body,
+			MetadataDecoder.Handler<RESULT> handler) throws Exception {
+		ByteBuf data = Unpooled.copiedBuffer(body, MetadataUtils.CHARSET);
+		try {
+			return MetadataTestUtils.decode(decoder, writer -> {
+				if (principal != null)
+					writer.writeString(MIME_TYPE_PRINCIPAL, principal);
+				if (key != null)
+					IdempotencyKey.write(writer, key);
+			}, data, "IdempotencyService", "method", handler);
+		} finally {
+			data.release();
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.lfp.rsocket.ipc.metadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+
+import io.rsocket.Closeable;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.ipc.Client;
+import io.rsocket.ipc.IPCRSocket;
+import io.rsocket.ipc.RequestHandlingRSocket;
+import io.rsocket.ipc.Server;
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.encoders.MetadataEncoderLFP;
+import io.rsocket.ipc.marshallers.Strings;
+import io.rsocket.ipc.mimetype.MimeType;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.transport.ClientTransport;
+import io.rsocket.transport.ServerTransport;
+import io.rsocket.transport.local.LocalClientTransport;
+import io.rsocket.transport.local.LocalServerTransport;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Drives Client -> MetadataEncoderLFP -> MetadataDecoderLFP ->
+ * RequestHandlingRSocket under load and logs throughput and latency
+ * percentiles. It binds a local port and depends on timing, so it only runs
+ * when enabled. Scale it up with system properties. EX:
+ *
+ * <pre>
+ * mvn test -Dtest=LoadTest -Dloadtest.enabled=true -Dloadtest.requests=200000 -Dloadtest.concurrency=256 -Dloadtest.interceptors=8 -Dloadtest.static=true
+ * </pre>
+ */
+public class LoadTest {
+
+	private static final String PROPERTY_PREFIX = "loadtest.";
+	private static final String SERVICE = "LoadService";
+
+	private enum Transport {
+		LOCAL, TCP;
+
+		public ServerTransport<? extends Closeable> server(int port) {
+			if (this == LOCAL)
+				return LocalServerTransport.create(SERVICE + "-" + port);
+			return TcpServerTransport.create("localhost", port);
+		}
+
+		public ClientTransport client(int port) {
+			if (this == LOCAL)
+				return LocalClientTransport.create(SERVICE + "-" + port);
+			return TcpClientTransport.create("localhost", port);
+		}
+	}
+
+	private enum Interaction {
+		REQUEST_RESPONSE, REQUEST_STREAM, REQUEST_CHANNEL;
+	}
+
+	@Test
+	public void test() {
+		Assume.assumeTrue(Boolean.parseBoolean(getProperty("enabled", "false")));
+		List<Transport> transports = Arrays.stream(getProperty("transports", "local,tcp").split(","))
+				.map(String::trim).filter(v -> !v.isEmpty()).map(v -> Transport.valueOf(v.toUpperCase(Locale.ROOT)))
+				.collect(Collectors.toList());
+		int port = Integer.parseInt(getProperty("port", "7001"));
+		for (Transport transport : transports)
+			run(transport, port);
+	}
+
+	private static void run(Transport transport, int port) {
+		int requests = Integer.parseInt(getProperty("requests", "2000"));
+		int warmupRequests = Integer.parseInt(getProperty("warmup", String.valueOf(requests / 4)));
+		int concurrency = Integer.parseInt(
+				getProperty("concurrency", String.valueOf(Runtime.getRuntime().availableProcessors() * 4)));
+		int interceptorCount = Integer.parseInt(getProperty("interceptors", "2"));
+		int entryCount = Integer.parseInt(getProperty("entries", "1"));
+		int valueSize = Integer.parseInt(getProperty("valueSize", "16"));
+		boolean staticInterceptors = Boolean.parseBoolean(getProperty("static", "false"));
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		MetadataEncoderLFP encoder = new MetadataEncoderLFP();
+		for (int i = 0; i < interceptorCount; i++) {
+			MimeType mimeType = MimeTypes.create("message/x.rsocket.ipc.loadtest.v" + i);
+			String[] values = IntStream.range(0, entryCount).mapToObj(index -> createValue(index, valueSize))
+					.toArray(String[]::new);
+			if (staticInterceptors)
+				encoder.addStaticInterceptor(writer -> writer.writeString(mimeType, values));
+			else
+				encoder.addInterceptor(writer -> writer.writeString(mimeType, values));
+			decoder.addInterceptor(reader -> {
+				if (!reader.containsString(mimeType, values[values.length - 1]))
+					throw new IllegalArgumentException("metadata missing:" + mimeType.getString());
+			});
+		}
+		RequestHandlingRSocket requestHandler = new RequestHandlingRSocket(decoder);
+		IPCRSocket service = Server.service(SERVICE).noMeterRegistry().noTracer().marshall(Strings.marshaller())
+				.unmarshall(Strings.unmarshaller()).requestResponse("echo", (s, byteBuf) -> Mono.just(s))
+				.requestStream("echoStream", (s, byteBuf) -> Flux.just(s, s))
+				.requestChannel("echoChannel", (s, publisher, byteBuf) -> Flux.just(s)).toIPCRSocket();
+		requestHandler.withEndpoint(service);
+		Closeable server;
+		{// start server
+			SocketAcceptor socketAcceptor = (setup, client) -> Mono.just(requestHandler);
+			server = RSocketServer.create(socketAcceptor).errorConsumer(t -> {
+				java.util.logging.Logger.getLogger("[server]").log(Level.SEVERE, "uncaught error", t);
+			}).bind(transport.server(port)).block();
+		}
+		RSocket rsocket;
+		{// start client
+			rsocket = RSocketConnector.create().connect(transport.client(port)).block();
+		}
+		try {
+			Client<CharSequence, String> loadService = Client.service(SERVICE).rsocket(rsocket)
+					.customMetadataEncoder(encoder).noMeterRegistry().noTracer().marshall(Strings.marshaller())
+					.unmarshall(Strings.unmarshaller());
+			for (Interaction interaction : Interaction.values()) {
+				Function<String, Publisher<String>> call;
+				if (Interaction.REQUEST_RESPONSE.equals(interaction))
+					call = v -> loadService.requestResponse("echo").apply(v);
+				else if (Interaction.REQUEST_STREAM.equals(interaction))
+					call = v -> loadService.requestStream("echoStream").apply(v);
+				else
+					call = v -> loadService.requestChannel("echoChannel").apply(Mono.just(v));
+				execute(call, warmupRequests, concurrency);
+				Histogram histogram = new ConcurrentHistogram(3);
+				long startedAt = System.nanoTime();
+				List<String> errors = execute(call, requests, concurrency, histogram);
+				long elapsed = System.nanoTime() - startedAt;
+				java.util.logging.Logger.getLogger("[loadtest]").info(report(transport, interaction, requests, concurrency, interceptorCount, entryCount,
+						valueSize, staticInterceptors, elapsed, histogram));
+				Assert.assertTrue(String.valueOf(errors), errors.isEmpty());
+				Assert.assertEquals(requests, histogram.getTotalCount());
+			}
+		} finally {
+			rsocket.dispose();
+			server.dispose();
+		}
+	}
+
+	private static void execute(Function<String, Publisher<String>> call, int requests, int concurrency) {
+		execute(call, requests, concurrency, new ConcurrentHistogram(3));
+	}
+
+	private static List<String> execute(Function<String, Publisher<String>> call, int requests, int concurrency,
+			Histogram histogram) {
+		List<String> errors = new ArrayList<>();
+		Flux.range(0, requests).flatMap(index -> Mono.defer(() -> {
+			String value = String.valueOf(index);
+			long startedAt = System.nanoTime();
+			return Flux.from(call.apply(value)).doOnNext(response -> {
+				if (!value.equals(response))
+					synchronized (errors) {
+						errors.add(String.format("expected:%s actual:%s", value, response));
+					}
+			}).then(Mono.fromRunnable(() -> {
+				histogram.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt));
+			}));
+		}), concurrency).blockLast();
+		return errors;
+	}
+
+	private static String report(Transport transport, Interaction interaction, int requests, int concurrency,
+			int interceptorCount, int entryCount, int valueSize, boolean staticInterceptors, long elapsedNanos,
+			Histogram histogram) {
+		double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("[%s] %s requests=%s concurrency=%s interceptors=%s entries=%s valueSize=%s static=%s",
+				transport, interaction, requests, concurrency, interceptorCount, entryCount, valueSize,
+				staticInterceptors));
+		sb.append(String.format(" throughput=%.0f/s", requests / seconds));
+		sb.append(String.format(" latencyMicros[p50=%s p90=%s p99=%s p99.9=%s max=%s]",
+				histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+				histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMaxValue()));
+		return sb.toString();
+	}
+
+	private static String createValue(int index, int valueSize) {
+		StringBuilder sb = new StringBuilder(String.valueOf(index));
+		while (sb.length() < valueSize)
+			sb.append((char) ('a' + (sb.length() % 26)));
+		return sb.toString();
+	}
+
+	private static String getProperty(String name, String defaultValue) {
+		return System.getProperty(PROPERTY_PREFIX + name, defaultValue);
+	}
+}
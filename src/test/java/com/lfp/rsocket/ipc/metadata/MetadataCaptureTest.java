@@ -0,0 +1,136 @@
+package com.lfp.rsocket.ipc.metadata;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.ipc.capture.CapturedMetadata;
+import io.rsocket.ipc.capture.CapturedMetadata.Direction;
+import io.rsocket.ipc.capture.MetadataCapture;
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.encoders.MetadataEncoderLFP;
+import io.rsocket.ipc.ratelimit.RateLimitExceededException;
+import reactor.core.Disposable;
+
+public class MetadataCaptureTest {
+
+	@Test
+	public void testWraparound() {
+		MetadataCapture capture = new MetadataCapture(3, 1024, 1);
+		for (int i = 0; i < 10; i++)
+			capture(capture, "Service", "method" + i);
+		// capacity is rounded up to 4, only the newest frames are kept, oldest first
+		List<CapturedMetadata> captured = capture.getCaptured();
+		Assert.assertEquals(Arrays.asList(6L, 7L, 8L, 9L),
+				captured.stream().map(CapturedMetadata::getSequence).collect(Collectors.toList()));
+		Assert.assertEquals(Arrays.asList("Service.method6", "Service.method7", "Service.method8", "Service.method9"),
+				captured.stream().map(CapturedMetadata::getRoute).collect(Collectors.toList()));
+		Assert.assertEquals(10, capture.getCapturedCount());
+		Assert.assertEquals(4, capture.dump().length);
+		capture.clear();
+		Assert.assertTrue(capture.getCaptured().isEmpty());
+	}
+
+	@Test
+	public void testTruncation() {
+		MetadataCapture capture = new MetadataCapture(4, 8, 1);
+		capture(capture, "Service", "method");
+		CapturedMetadata captured = capture.getCaptured().get(0);
+		Assert.assertTrue(captured.isTruncated());
+		Assert.assertEquals(8, captured.getBytes().length);
+		Assert.assertTrue(captured.getSize() > 8);
+		Assert.assertEquals("Service.method", captured.getRoute());
+	}
+
+	@Test
+	public void testRule() {
+		MetadataCapture capture = new MetadataCapture(4, 1024, 0);
+		capture(capture, "Service", "small");
+		Assert.assertTrue(capture.getCaptured().isEmpty());
+		Disposable rule = capture.addRule(metadata -> metadata.readableBytes() > size("Service", "small"));
+		capture(capture, "Service", "small");
+		capture(capture, "Service", "aMethodWithAVeryLongNameThatTriggersTheRule");
+		Assert.assertEquals(Arrays.asList("Service.aMethodWithAVeryLongNameThatTriggersTheRule"),
+				capture.getCaptured().stream().map(CapturedMetadata::getRoute).collect(Collectors.toList()));
+		rule.dispose();
+		capture(capture, "Service", "aMethodWithAVeryLongNameThatTriggersTheRule");
+		Assert.assertEquals(1, capture.getCaptured().size());
+		capture.setEnabled(false);
+		capture.addRule(metadata -> true);
+		capture(capture, "Service", "method");
+		Assert.assertEquals(1, capture.getCaptured().size());
+	}
+
+	@Test
+	public void testDecodeError() throws Exception {
+		MetadataCapture capture = new MetadataCapture(4, 1024, 0);
+		capture.addErrorRule(error -> error instanceof IllegalStateException);
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		decoder.addCapture(capture);
+		// unmatched failures are sampled like any other frame
+		Assert.assertThrows(RateLimitExceededException.class,
+				() -> MetadataTestUtils.decode(decoder, null, "Service", "shed", (data, md, route, spanContext) -> {
+					throw new RateLimitExceededException("shed");
+				}));
+		Assert.assertTrue(capture.getCaptured().isEmpty());
+		Assert.assertThrows(IllegalStateException.class,
+				() -> MetadataTestUtils.decode(decoder, null, "Service", "fail", (data, md, route, spanContext) -> {
+					throw new IllegalStateException("boom");
+				}));
+		CapturedMetadata captured = capture.getCaptured().get(0);
+		Assert.assertEquals(Direction.DECODE, captured.getDirection());
+		Assert.assertEquals("Service.fail", captured.getRoute());
+		Assert.assertTrue(captured.getError(), captured.getError().contains("boom"));
+	}
+
+	@Test
+	public void testUnparseable() {
+		MetadataCapture capture = new MetadataCapture(4, 1024, 1);
+		capture.capture(Direction.DECODE, Unpooled.wrappedBuffer(new byte[] { 5, 'a', 'b' }));
+		CapturedMetadata captured = capture.getCaptured().get(0);
+		Assert.assertTrue(captured.getError(), captured.getError().startsWith("unparseable metadata:"));
+		Assert.assertEquals(3, captured.getBytes().length);
+	}
+
+	@Test
+	public void testRegisterMBean() throws Exception {
+		MetadataCapture capture = new MetadataCapture(4, 1024, 1);
+		String objectName = "io.rsocket.ipc:type=MetadataCapture,name=test";
+		Disposable registration = capture.registerMBean(objectName);
+		try {
+			capture(capture, "Service", "method");
+			Object capturedCount = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(objectName),
+					"CapturedCount");
+			Assert.assertEquals(1L, capturedCount);
+		} finally {
+			registration.dispose();
+		}
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(objectName)));
+	}
+
+	private static int size(String service, String method) {
+		ByteBuf metadata = new MetadataEncoderLFP().encode(Unpooled.EMPTY_BUFFER, null, service, method);
+		try {
+			return metadata.readableBytes();
+		} finally {
+			metadata.release();
+		}
+	}
+
+	private static void capture(MetadataCapture capture, String service, String method) {
+		ByteBuf metadata = new MetadataEncoderLFP().encode(Unpooled.EMPTY_BUFFER, null, service, method);
+		try {
+			capture.capture(Direction.ENCODE, metadata);
+		} finally {
+			metadata.release();
+		}
+	}
+}
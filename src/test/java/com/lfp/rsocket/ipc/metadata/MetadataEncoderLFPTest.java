@@ -0,0 +1,151 @@
+package com.lfp.rsocket.ipc.metadata;
+
+import java.lang.reflect.Proxy;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.TextMap;
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.encoders.MetadataEncoderLFP;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.mimetype.MimeType;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.tracer.BinaryTraceContext;
+import io.rsocket.ipc.tracer.TracingFormat;
+import io.rsocket.util.DefaultPayload;
+import reactor.core.Disposable;
+
+public class MetadataEncoderLFPTest {
+
+	private static final MimeType MIME_TYPE_STATIC = MimeTypes.create("message/x.rsocket.ipc.test.static");
+
+	@Test
+	public void testStaticInterceptor() {
+		MetadataEncoderLFP encoder = new MetadataEncoderLFP();
+		AtomicInteger renderCount = new AtomicInteger();
+		encoder.addStaticInterceptor(writer -> {
+			renderCount.incrementAndGet();
+			writer.writeString(MIME_TYPE_STATIC, "client-1");
+		});
+		for (int i = 0; i < 3; i++)
+			Assert.assertEquals(Arrays.asList("client-1"), encodeAndRead(encoder));
+		Assert.assertEquals(1, renderCount.get());
+		Disposable disposable = encoder
+				.addInterceptor((MetadataEncoderLFP.StaticInterceptor) writer -> writer.writeString(MIME_TYPE_STATIC,
+						"version-2"));
+		Assert.assertEquals(Arrays.asList("client-1", "version-2"), encodeAndRead(encoder));
+		Assert.assertEquals(2, renderCount.get());
+		disposable.dispose();
+		Assert.assertEquals(Arrays.asList("client-1"), encodeAndRead(encoder));
+		Assert.assertEquals(3, renderCount.get());
+	}
+
+	@Test
+	public void testBinaryTracing() throws Exception {
+		SpanContext spanContext = new SpanContext() {
+
+			@Override
+			public String toTraceId() {
+				return "463ac35c9f6413ad";
+			}
+
+			@Override
+			public String toSpanId() {
+				return "a2fb4a1d1a96d312";
+			}
+
+			@Override
+			public Iterable<Entry<String, String>> baggageItems() {
+				return Arrays.asList(new SimpleImmutableEntry<>("user", "alice"),
+						new SimpleImmutableEntry<>("tenant", "a&b=c"));
+			}
+		};
+		List<Entry<String, String>> extracted = new ArrayList<>();
+		Tracer tracer = (Tracer) Proxy.newProxyInstance(Tracer.class.getClassLoader(), new Class<?>[] { Tracer.class },
+				(proxy, method, args) -> {
+					if (!"extract".equals(method.getName()))
+						throw new UnsupportedOperationException(method.getName());
+					((TextMap) args[1]).forEach(extracted::add);
+					return spanContext;
+				});
+		MetadataEncoderLFP encoder = new MetadataEncoderLFP(ByteBufAllocator.DEFAULT, TracingFormat.BINARY,
+				ctx -> BinaryTraceContext.FLAG_SAMPLED);
+		ByteBuf metadata = encoder.encode(Unpooled.EMPTY_BUFFER, spanContext, "TracingService", "method");
+		try {
+			SpanContext decoded = new MetadataDecoderLFP(tracer).decode(
+					DefaultPayload.create(Unpooled.EMPTY_BUFFER, metadata), (data, md, route, context) -> context);
+			Assert.assertSame(spanContext, decoded);
+		} finally {
+			metadata.release();
+		}
+		List<Entry<String, String>> expected = new ArrayList<>();
+		expected.add(new SimpleImmutableEntry<>("traceparent", "00-0000000000000000463ac35c9f6413ad-a2fb4a1d1a96d312-01"));
+		spanContext.baggageItems().forEach(expected::add);
+		Assert.assertEquals(expected, extracted);
+	}
+
+	@Test
+	public void testBinaryTracingUnsupportedTracer() throws Exception {
+		SpanContext spanContext = new SpanContext() {
+
+			@Override
+			public String toTraceId() {
+				return "463ac35c9f6413ad";
+			}
+
+			@Override
+			public String toSpanId() {
+				return "a2fb4a1d1a96d312";
+			}
+
+			@Override
+			public Iterable<Entry<String, String>> baggageItems() {
+				return Arrays.asList();
+			}
+		};
+		// ex: a B3 tracer that doesn't read the traceparent key
+		Tracer tracer = (Tracer) Proxy.newProxyInstance(Tracer.class.getClassLoader(), new Class<?>[] { Tracer.class },
+				(proxy, method, args) -> {
+					if (!"extract".equals(method.getName()))
+						throw new UnsupportedOperationException(method.getName());
+					return null;
+				});
+		MetadataEncoderLFP encoder = new MetadataEncoderLFP(ByteBufAllocator.DEFAULT, TracingFormat.BINARY,
+				ctx -> 0);
+		ByteBuf metadata = encoder.encode(Unpooled.EMPTY_BUFFER, spanContext, "TracingService", "method");
+		try {
+			AtomicInteger handled = new AtomicInteger();
+			SpanContext decoded = new MetadataDecoderLFP(tracer).decode(
+					DefaultPayload.create(Unpooled.EMPTY_BUFFER, metadata), (data, md, route, context) -> {
+						handled.incrementAndGet();
+						return context;
+					});
+			Assert.assertNull(decoded);
+			Assert.assertEquals(1, handled.get());
+		} finally {
+			metadata.release();
+		}
+	}
+
+	private static List<String> encodeAndRead(MetadataEncoderLFP encoder) {
+		ByteBuf metadata = encoder.encode(Unpooled.EMPTY_BUFFER, null, "StaticService", "method");
+		try {
+			return new MetadataReader(metadata).streamStrings(MIME_TYPE_STATIC).collect(Collectors.toList());
+		} finally {
+			metadata.release();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.lfp.rsocket.ipc.metadata;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.ipc.encoders.MetadataEncoderLFP;
+import io.rsocket.ipc.encoders.MetadataReader;
+import io.rsocket.ipc.mimetype.MimeType;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.rewrite.MetadataRewriter;
+
+public class MetadataRewriterTest {
+
+	private static final MimeType MIME_TYPE_PASSWORD = MimeTypes.create("password");
+	private static final MimeType MIME_TYPE_PRINCIPAL = MimeTypes.create("principal");
+	private static final MimeType MIME_TYPE_CLIENT_ID = MimeTypes.create("client-id");
+
+	@Test
+	public void test() {
+		MetadataEncoderLFP encoder = new MetadataEncoderLFP(writer -> {
+			writer.writeString(MIME_TYPE_CLIENT_ID, "client-1");
+			writer.writeString(MIME_TYPE_PASSWORD, "thisIsACoolPassWord!");
+			writer.writeString(MIME_TYPE_PRINCIPAL, "spoofed");
+		});
+		ByteBuf encoded = encoder.encode(Unpooled.EMPTY_BUFFER, null, "HelloService", "hello");
+		ByteBuf inbound;
+		try {
+			inbound = Unpooled.copiedBuffer(encoded);
+		} finally {
+			encoded.release();
+		}
+		MetadataRewriter rewriter = new MetadataRewriter().remove(MIME_TYPE_PASSWORD)
+				.replace(MIME_TYPE_PRINCIPAL, writer -> writer.writeString(MIME_TYPE_PRINCIPAL, "alice"))
+				.add(writer -> writer.writeString(MIME_TYPE_CLIENT_ID, "gateway"));
+		CompositeByteBuf outbound = rewriter.rewrite(ByteBufAllocator.DEFAULT, inbound);
+		MetadataReader reader = new MetadataReader(outbound);
+		Assert.assertFalse(reader.streamStrings(MIME_TYPE_PASSWORD).findFirst().isPresent());
+		Assert.assertEquals(Arrays.asList("alice"), strings(reader, MIME_TYPE_PRINCIPAL));
+		Assert.assertEquals(Arrays.asList("client-1", "gateway"), strings(reader, MIME_TYPE_CLIENT_ID));
+		Assert.assertEquals(Arrays.asList("HelloService"), strings(reader, MimeTypes.MIME_TYPE_SERVICE));
+		Assert.assertEquals(Arrays.asList("hello"), strings(reader, MimeTypes.MIME_TYPE_METHOD));
+		Assert.assertEquals(Arrays.asList("client-id", "principal", "message/x.rsocket.routing.v0",
+				MimeTypes.MIME_TYPE_METHOD.getString(), "client-id"),
+				reader.getCompositeMetadata().stream().map(e -> e.getMimeType()).collect(Collectors.toList()));
+		outbound.release();
+		Assert.assertEquals(1, inbound.refCnt());
+		inbound.release();
+	}
+
+	private static List<String> strings(MetadataReader reader, MimeType mimeType) {
+		return reader.streamStrings(mimeType).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,34 @@
+package com.lfp.rsocket.ipc.metadata;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.ipc.MetadataDecoder;
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.encoders.MetadataEncoderLFP;
+import io.rsocket.util.DefaultPayload;
+
+public class MetadataTestUtils {
+
+	/**
+	 * encodes metadata for the given service and method with the interceptor and
+	 * decodes it with an empty body. The encoded metadata is released once decode
+	 * returns, handlers must not hold on to it.
+	 */
+	public static <RESULT> RESULT decode(MetadataDecoderLFP decoder, MetadataEncoderLFP.Interceptor interceptor,
+			String service, String method, MetadataDecoder.Handler<RESULT> handler) throws Exception {
+		return decode(decoder, interceptor, Unpooled.EMPTY_BUFFER, service, method, handler);
+	}
+
+	public static <RESULT> RESULT decode(MetadataDecoderLFP decoder, MetadataEncoderLFP.Interceptor interceptor,
+			ByteBuf data, String service, String method, MetadataDecoder.Handler<RESULT> handler) throws Exception {
+		MetadataEncoderLFP encoder = new MetadataEncoderLFP(interceptor);
+		ByteBuf metadata = encoder.encode(Unpooled.EMPTY_BUFFER, null, service, method);
+		try {
+			Payload payload = DefaultPayload.create(data, metadata);
+			return decoder.decode(payload, handler);
+		} finally {
+			metadata.release();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.lfp.rsocket.ipc.metadata;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.priority.Priority;
+import io.rsocket.ipc.priority.PriorityDispatcher;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+public class PriorityDispatcherTest {
+
+	@Test
+	public void test() throws Exception {
+		PriorityDispatcher dispatcher = new PriorityDispatcher(1, 16, Priority.DEFAULT, Schedulers.immediate());
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		decoder.addDispatcher(dispatcher);
+		List<String> subscribed = new ArrayList<>();
+		MonoProcessor<String> blocker = MonoProcessor.create();
+		decode(decoder, Priority.DEFAULT, () -> blocker).subscribe();
+		Assert.assertEquals(1, dispatcher.getInFlight());
+		for (int i = 0; i < 2; i++) {
+			String name = "bulk" + i;
+			decode(decoder, Priority.BULK, () -> Mono.fromCallable(() -> {
+				subscribed.add(name);
+				return name;
+			})).subscribe();
+		}
+		for (int i = 0; i < 10; i++) {
+			String name = "interactive" + i;
+			decode(decoder, Priority.INTERACTIVE, () -> Mono.fromCallable(() -> {
+				subscribed.add(name);
+				return name;
+			})).subscribe();
+		}
+		Assert.assertTrue(subscribed.isEmpty());
+		Assert.assertEquals(2, dispatcher.getStats(Priority.BULK).getQueueDepth());
+		Assert.assertEquals(10, dispatcher.getStats(Priority.INTERACTIVE).getQueueDepth());
+		blocker.onNext("done");
+		Assert.assertEquals(Arrays.asList("interactive0", "interactive1", "interactive2", "interactive3",
+				"interactive4", "interactive5", "interactive6", "interactive7", "bulk0", "interactive8",
+				"interactive9", "bulk1"), subscribed);
+		Assert.assertEquals(0, dispatcher.getInFlight());
+		Assert.assertEquals(0, dispatcher.getStats(Priority.INTERACTIVE).getQueueDepth());
+		Assert.assertEquals(10, dispatcher.getStats(Priority.INTERACTIVE).getDispatched());
+		Assert.assertEquals(2, dispatcher.getStats(Priority.BULK).getDispatched());
+	}
+
+	@Test
+	public void testCancelWhileSaturated() throws Exception {
+		PriorityDispatcher dispatcher = new PriorityDispatcher(1, 16, Priority.DEFAULT, Schedulers.immediate());
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		decoder.addDispatcher(dispatcher);
+		MonoProcessor<String> blocker = MonoProcessor.create();
+		decode(decoder, Priority.DEFAULT, () -> blocker).subscribe();
+		for (int i = 0; i < 10_000; i++)
+			decode(decoder, Priority.INTERACTIVE, () -> Mono.just("cancelled")).subscribe().dispose();
+		Assert.assertEquals(0, dispatcher.getStats(Priority.INTERACTIVE).getQueueDepth());
+		Assert.assertEquals(0, queueSize(dispatcher, Priority.INTERACTIVE));
+		List<String> subscribed = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			String name = "interactive" + i;
+			decode(decoder, Priority.INTERACTIVE, () -> Mono.fromCallable(() -> {
+				subscribed.add(name);
+				return name;
+			})).subscribe();
+		}
+		Assert.assertEquals(0, dispatcher.getStats(Priority.INTERACTIVE).getRejected());
+		blocker.onNext("done");
+		Assert.assertEquals(16, subscribed.size());
+		Assert.assertEquals(0, dispatcher.getInFlight());
+	}
+
+	private static int queueSize(PriorityDispatcher dispatcher, Priority priority) throws Exception {
+		// the lane queue isn't exposed, read it to check that cancelled tasks are removed
+		Field lanesField = PriorityDispatcher.class.getDeclaredField("lanes");
+		lanesField.setAccessible(true);
+		Object lane = ((Map<?, ?>) lanesField.get(dispatcher)).get(priority);
+		Field queueField = lane.getClass().getDeclaredField("queue");
+		queueField.setAccessible(true);
+		return ((Collection<?>) queueField.get(lane)).size();
+	}
+
+	@Test
+	public void testSchedulerRejected() throws Exception {
+		Scheduler scheduler = Schedulers.newSingle("priority-test");
+		scheduler.dispose();
+		PriorityDispatcher dispatcher = new PriorityDispatcher(1, 16, Priority.DEFAULT, scheduler);
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP();
+		decoder.addDispatcher(dispatcher);
+		for (int i = 0; i < 2; i++)
+			StepVerifier.create(decode(decoder, Priority.DEFAULT, () -> Mono.just("ok")))
+					.expectError(RejectedExecutionException.class).verify(Duration.ofSeconds(5));
+		Assert.assertEquals(0, dispatcher.getInFlight());
+		Assert.assertEquals(0, dispatcher.getStats(Priority.DEFAULT).getQueueDepth());
+		Assert.assertEquals(0, dispatcher.getStats(Priority.DEFAULT).getDispatched());
+	}
+
+	private static Mono<String> decode(MetadataDecoderLFP decoder, Priority priority,
+			Supplier<Mono<String>> handler) throws Exception {
+		return MetadataTestUtils.decode(decoder, Priority.encoderInterceptor(priority), "PriorityService", "method",
+				(data, md, route, spanContext) -> handler.get());
+	}
+}
@@ -0,0 +1,100 @@
+package com.lfp.rsocket.ipc.metadata;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.rsocket.ipc.decoders.MetadataDecoderLFP;
+import io.rsocket.ipc.mimetype.MimeType;
+import io.rsocket.ipc.mimetype.MimeTypes;
+import io.rsocket.ipc.ratelimit.RateLimitExceededException;
+import io.rsocket.ipc.ratelimit.RateLimitInterceptor;
+import io.rsocket.ipc.ratelimit.RateLimitInterceptor.MissingKeyPolicy;
+
+public class RateLimitInterceptorTest {
+
+	private static final MimeType MIME_TYPE_CLIENT_ID = MimeTypes.create("message/x.rsocket.ipc.test.client-id");
+
+	@Test
+	public void test() throws Exception {
+		RateLimitInterceptor rateLimiter = new RateLimitInterceptor(MIME_TYPE_CLIENT_ID, MissingKeyPolicy.REJECT, 1, 5);
+		MetadataDecoderLFP decoder = new MetadataDecoderLFP(rateLimiter);
+		for (int i = 0; i < 5; i++)
+			Assert.assertEquals("ok", decode(decoder, "alice"));
+		Assert.assertThrows(RateLimitExceededException.class, () -> decode(decoder, "alice"));
+		Assert.assertEquals("ok", decode(decoder, "bob"));
+		Assert.assertEquals(1, rateLimiter.getRejected());
+		Assert.assertEquals(2, rateLimiter.getKeyCount());
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		RateLimitInterceptor rateLimiter = new RateLimitInterceptor(reader -> null, MissingKeyPolicy.PASS, 1, 100, 16,
+				Duration.ofMinutes(1));
+		AtomicInteger accepted = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+			threads.add(new Thread(() -> {
+				for (int j = 0; j < 10_000; j++)
+					if (rateLimiter.tryAcquire("shared"))
+						accepted.incrementAndGet();
+			}));
+		threads.forEach(Thread::start);
+		for (Thread thread : threads)
+			thread.join();
+		// one more permit may have been emitted while the threads were running
+		Assert.assertTrue(String.valueOf(accepted.get()), accepted.get() >= 100 && accepted.get() <= 101);
+	}
+
+	@Test
+	public void testEvictIdle() throws Exception {
+		RateLimitInterceptor rateLimiter = new RateLimitInterceptor(reader -> null, MissingKeyPolicy.PASS, 1000, 1, 16,
+				Duration.ofMillis(10));
+		Assert.assertTrue(rateLimiter.tryAcquire("alice"));
+		Assert.assertEquals(1, rateLimiter.getKeyCount());
+		Thread.sleep(50);
+		rateLimiter.evictIdle();
+		Assert.assertEquals(0, rateLimiter.getKeyCount());
+	}
+
+	@Test
+	public void testMaxKeys() throws Exception {
+		RateLimitInterceptor rateLimiter = new RateLimitInterceptor(reader -> null, MissingKeyPolicy.PASS, 1, 1, 2,
+				Duration.ofMinutes(1));
+		Assert.assertTrue(rateLimiter.tryAcquire("alice"));
+		Assert.assertTrue(rateLimiter.tryAcquire("bob"));
+		// rotating keys past the limit share one bucket instead of getting a fresh burst
+		Assert.assertTrue(rateLimiter.tryAcquire("key0"));
+		for (int i = 1; i < 100; i++)
+			Assert.assertFalse(rateLimiter.tryAcquire("key" + i));
+		Assert.assertEquals(2, rateLimiter.getKeyCount());
+		Assert.assertEquals(100, rateLimiter.getOverflowed());
+	}
+
+	@Test
+	public void testMissingKeyPolicy() throws Exception {
+		MetadataDecoderLFP pass = new MetadataDecoderLFP(
+				new RateLimitInterceptor(MIME_TYPE_CLIENT_ID, MissingKeyPolicy.PASS, 1, 1));
+		for (int i = 0; i < 3; i++)
+			Assert.assertEquals("ok", decode(pass, null));
+		MetadataDecoderLFP reject = new MetadataDecoderLFP(
+				new RateLimitInterceptor(MIME_TYPE_CLIENT_ID, MissingKeyPolicy.REJECT, 1, 1));
+		Assert.assertThrows(RateLimitExceededException.class, () -> decode(reject, null));
+		Assert.assertEquals("ok", decode(reject, "alice"));
+		MetadataDecoderLFP shared = new MetadataDecoderLFP(
+				new RateLimitInterceptor(MIME_TYPE_CLIENT_ID, MissingKeyPolicy.SHARED, 1, 1));
+		Assert.assertEquals("ok", decode(shared, null));
+		Assert.assertThrows(RateLimitExceededException.class, () -> decode(shared, null));
+	}
+
+	private static String decode(MetadataDecoderLFP decoder, String clientId) throws Exception {
+		return MetadataTestUtils.decode(decoder, writer -> {
+			if (clientId != null)
+				writer.writeString(MIME_TYPE_CLIENT_ID, clientId);
+		}, "RateLimitService", "method", (data, md, route, spanContext) -> "ok");
+	}
+}